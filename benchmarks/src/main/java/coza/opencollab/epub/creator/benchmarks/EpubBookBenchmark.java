@@ -0,0 +1,86 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.benchmarks;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures adding content to a book
+ *
+ * @author OpenCollab
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EpubBookBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int chapters;
+
+    @Param({"16384", "1048576"})
+    private int assetSize;
+
+    private String[] texts;
+
+    private byte[] asset;
+
+    @Setup
+    public void setup() {
+        texts = new String[chapters];
+        for (int i = 0; i < chapters; i++) {
+            texts[i] = SyntheticBook.chapterText(i);
+        }
+        asset = SyntheticBook.asset(assetSize);
+    }
+
+    @Benchmark
+    public EpubBook addTextContent() {
+        EpubBook book = new EpubBook("en", "benchmark-book", "Benchmark Book", "OpenCollab");
+        for (int i = 0; i < chapters; i++) {
+            book.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", texts[i]);
+        }
+        return book;
+    }
+
+    @Benchmark
+    public EpubBook addContent() {
+        EpubBook book = new EpubBook("en", "benchmark-book", "Benchmark Book", "OpenCollab");
+        for (int i = 0; i < chapters; i++) {
+            book.addContent(asset, "image/jpeg", "img/asset.jpg", false, false);
+        }
+        return book;
+    }
+}
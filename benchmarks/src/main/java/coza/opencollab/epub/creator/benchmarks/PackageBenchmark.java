@@ -0,0 +1,96 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.benchmarks;
+
+import coza.opencollab.epub.creator.impl.OpfCreatorDefault;
+import coza.opencollab.epub.creator.impl.OpfCreatorStreaming;
+import coza.opencollab.epub.creator.impl.TocCreatorDefault;
+import coza.opencollab.epub.creator.impl.TocCreatorStreaming;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building the navigation document and the OPF with the DOM based
+ * and the streaming creators
+ *
+ * @author OpenCollab
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackageBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int chapters;
+
+    @Param({"0", "1", "3"})
+    private int tocDepth;
+
+    private EpubBook book;
+
+    private final TocCreatorDefault tocCreatorDefault = new TocCreatorDefault();
+
+    private final TocCreatorStreaming tocCreatorStreaming = new TocCreatorStreaming();
+
+    private final OpfCreatorDefault opfCreatorDefault = new OpfCreatorDefault();
+
+    private final OpfCreatorStreaming opfCreatorStreaming = new OpfCreatorStreaming();
+
+    @Setup
+    public void setup() {
+        book = SyntheticBook.create(chapters, null, tocDepth);
+    }
+
+    @Benchmark
+    public Content createTocDefault() {
+        return tocCreatorDefault.createTocFromBook(book);
+    }
+
+    @Benchmark
+    public byte[] createTocStreaming() {
+        return tocCreatorStreaming.createTocFromBook(book).getContent();
+    }
+
+    @Benchmark
+    public String createOpfDefault() {
+        return opfCreatorDefault.createOpfString(book);
+    }
+
+    @Benchmark
+    public String createOpfStreaming() {
+        return opfCreatorStreaming.createOpfString(book);
+    }
+}
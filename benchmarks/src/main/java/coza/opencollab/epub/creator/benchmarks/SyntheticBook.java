@@ -0,0 +1,129 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.benchmarks;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.TocLink;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the synthetic books used by the benchmarks
+ *
+ * @author OpenCollab
+ */
+final class SyntheticBook {
+
+    /**
+     * The number of child links added to each TOC link above the deepest
+     * level
+     */
+    private static final int TOC_FAN_OUT = 3;
+
+    private SyntheticBook() {
+    }
+
+    /**
+     * Creates the text of a chapter
+     *
+     * @param chapter
+     * @return
+     */
+    static String chapterText(int chapter) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append("<p>Paragraph ").append(i).append(" of chapter ").append(chapter)
+                    .append(". The quick brown fox jumps over the lazy dog.</p>\n");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Creates random, incompressible asset data
+     *
+     * @param size
+     * @return
+     */
+    static byte[] asset(int size) {
+        byte[] asset = new byte[size];
+        new Random(size).nextBytes(asset);
+        return asset;
+    }
+
+    /**
+     * Creates a book with text chapters, a stylesheet, an image asset and a
+     * TOC of the given depth. A depth of 0 uses the automatic TOC
+     *
+     * @param chapters the number of chapters
+     * @param asset the image asset, or null for no asset
+     * @param tocDepth the depth of the TOC links
+     * @return the book
+     */
+    static EpubBook create(int chapters, byte[] asset, int tocDepth) {
+        EpubBook book = new EpubBook("en", "benchmark-book", "Benchmark Book", "OpenCollab");
+        book.setModified(new Date(1400000000000L));
+        book.addContent(chapterText(0).getBytes(), "text/css", "css/book.css", false, false);
+        if (asset != null) {
+            book.addContent(asset, "image/jpeg", "img/asset.jpg", false, false);
+        }
+        for (int i = 0; i < chapters; i++) {
+            book.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", chapterText(i)).setToc(true);
+        }
+        if (tocDepth > 0) {
+            book.setAutoToc(false);
+            book.setTocLinks(tocLinks(chapters, tocDepth));
+        }
+        return book;
+    }
+
+    /**
+     * Creates nested TOC links, one top level link for each chapter
+     *
+     * @param chapters
+     * @param depth
+     * @return
+     */
+    private static List<TocLink> tocLinks(int chapters, int depth) {
+        List<TocLink> links = new ArrayList<>(chapters);
+        for (int i = 0; i < chapters; i++) {
+            String href = "xhtml/chapter" + i + ".xhtml";
+            TocLink link = new TocLink(href, "Chapter " + i, null);
+            addChildren(link, href, depth - 1);
+            links.add(link);
+        }
+        return links;
+    }
+
+    private static void addChildren(TocLink parent, String href, int depth) {
+        if (depth <= 0) {
+            return;
+        }
+        List<TocLink> children = new ArrayList<>(TOC_FAN_OUT);
+        for (int i = 0; i < TOC_FAN_OUT; i++) {
+            TocLink child = new TocLink(href + "#s" + depth + "_" + i, parent.getTitle() + "." + i, null);
+            addChildren(child, href, depth - 1);
+            children.add(child);
+        }
+        parent.setTocChildLinks(children);
+    }
+}
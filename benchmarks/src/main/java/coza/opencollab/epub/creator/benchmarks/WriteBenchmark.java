@@ -0,0 +1,96 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.benchmarks;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.util.EpubWriter;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures writing a whole book, sequentially and with parallel deflation
+ *
+ * @author OpenCollab
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int chapters;
+
+    @Param({"16384", "1048576"})
+    private int assetSize;
+
+    @Param({"0", "3"})
+    private int tocDepth;
+
+    private EpubBook book;
+
+    private EpubWriter writer;
+
+    private EpubWriter parallelWriter;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        book = SyntheticBook.create(chapters, SyntheticBook.asset(assetSize), tocDepth);
+        writer = new EpubWriter().freeze();
+        pool = new ForkJoinPool();
+        parallelWriter = new EpubWriter();
+        parallelWriter.setExecutor(pool);
+        parallelWriter.freeze();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void writeEpubToStream() throws IOException {
+        writer.writeEpubToStream(book, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+
+    @Benchmark
+    public void writeEpubToStreamParallel() throws IOException {
+        parallelWriter.writeEpubToStream(book, NullOutputStream.NULL_OUTPUT_STREAM);
+    }
+}
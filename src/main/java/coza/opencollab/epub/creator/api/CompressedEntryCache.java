@@ -0,0 +1,61 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.api;
+
+import coza.opencollab.epub.creator.util.CompressedEntry;
+
+/**
+ * Cache of compressed zip entries keyed by the hash of the uncompressed
+ * content and the deflate level. Shared resources like CSS, fonts and logos
+ * are then only compressed once for all the books written with the same
+ * cache. Implementations must be thread-safe.
+ *
+ * @author OpenCollab
+ */
+public interface CompressedEntryCache {
+
+    /**
+     * Returns the cached entry for the key
+     *
+     * @param key the content hash and deflate level
+     * @return the compressed entry or null if it is not cached
+     */
+    public CompressedEntry get(String key);
+
+    /**
+     * Adds an entry to the cache, the cache may evict other entries or
+     * decide not to keep this one
+     *
+     * @param key the content hash and deflate level
+     * @param entry the compressed entry
+     */
+    public void put(String key, CompressedEntry entry);
+
+    /**
+     * Returns the size of the largest entry the cache keeps. Content with a
+     * larger uncompressed size is streamed straight to the zip instead of
+     * being compressed into memory for the cache
+     *
+     * @return the maximum entry size in bytes
+     */
+    public long getMaxEntrySize();
+
+}
@@ -0,0 +1,45 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.api;
+
+import coza.opencollab.epub.creator.model.Content;
+import java.io.IOException;
+
+/**
+ * Service to decide how each Content object is compressed in the EPUB zip
+ *
+ * @author OpenCollab
+ */
+public interface CompressionPolicy {
+
+    /**
+     * Returns the deflate level to use for the Content. The level
+     * Deflater.NO_COMPRESSION writes the Content as a STORED entry.
+     *
+     * @param content the Content to be written, the source may be null for
+     * documents generated while writing, like the OPF
+     * @return the deflate level, between Deflater.NO_COMPRESSION and
+     * Deflater.BEST_COMPRESSION or Deflater.DEFAULT_COMPRESSION
+     * @throws IOException if the content could not be sampled
+     */
+    public int getCompressionLevel(Content content) throws IOException;
+
+}
@@ -0,0 +1,96 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.api;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+
+/**
+ * Receives the progress of the EpubWriter, for example to feed a metrics
+ * system. The listener is called on the writing thread and must be
+ * thread-safe if the writer is shared. Extend EpubWriteListenerAdapter to
+ * only implement some of the callbacks.
+ *
+ * @author OpenCollab
+ */
+public interface EpubWriteListener {
+
+    /**
+     * Called before anything is written
+     *
+     * @param book the book being written
+     */
+    public void writeStarted(EpubBook book);
+
+    /**
+     * Called once the navigation document has been built and written
+     *
+     * @param book the book being written
+     * @param nanos the time it took in nanoseconds
+     */
+    public void tocBuilt(EpubBook book, long nanos);
+
+    /**
+     * Called once the OPF has been built and written
+     *
+     * @param book the book being written
+     * @param nanos the time it took in nanoseconds
+     */
+    public void opfBuilt(EpubBook book, long nanos);
+
+    /**
+     * Called before a zip entry is written
+     *
+     * @param href the entry name in the zip
+     * @param mediaType the media type of the entry
+     */
+    public void entryStarted(String href, String mediaType);
+
+    /**
+     * Called after a zip entry has been written. When the content is
+     * compressed in parallel the time is the time the writing thread spent
+     * on the entry, including waiting for it to be compressed.
+     *
+     * @param href the entry name in the zip
+     * @param mediaType the media type of the entry
+     * @param size the uncompressed size in bytes
+     * @param compressedSize the size in the zip in bytes
+     * @param nanos the time it took in nanoseconds
+     */
+    public void entryWritten(String href, String mediaType, long size, long compressedSize, long nanos);
+
+    /**
+     * Called after the whole book has been written
+     *
+     * @param book the book written
+     * @param bytesWritten the size of the EPUB in bytes
+     * @param nanos the time it took in nanoseconds
+     */
+    public void writeFinished(EpubBook book, long bytesWritten, long nanos);
+
+    /**
+     * Called if the book could not be written
+     *
+     * @param book the book being written
+     * @param exception the reason it failed
+     */
+    public void writeFailed(EpubBook book, Exception exception);
+
+}
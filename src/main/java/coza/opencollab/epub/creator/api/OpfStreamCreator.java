@@ -0,0 +1,45 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.api;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OpfCreator that can write the Package Document directly to a stream instead
+ * of building it as a String first
+ *
+ * @author OpenCollab
+ */
+public interface OpfStreamCreator extends OpfCreator {
+
+    /**
+     * Writes the OPF file as UTF-8 to the OutputStream. The stream is not
+     * closed
+     *
+     * @param book the ePub book to generate the OPF for
+     * @param out the stream to write the OPF to
+     * @throws IOException if the OPF could not be written
+     */
+    public void writeOpf(EpubBook book, OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,45 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.api;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * TocCreator that can write the navigation document directly to a stream
+ * instead of building it in memory first
+ *
+ * @author OpenCollab
+ */
+public interface TocStreamCreator extends TocCreator {
+
+    /**
+     * Writes the EPUB TOC navigation document as UTF-8 to the OutputStream.
+     * The stream is not closed
+     *
+     * @param book the EpubBook to create the TOC for
+     * @param out the stream to write the navigation document to
+     * @throws IOException if the navigation document could not be written
+     */
+    public void writeToc(EpubBook book, OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,301 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.api.CompressedEntryCache;
+import coza.opencollab.epub.creator.util.CompressedEntry;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * CompressedEntryCache that keeps the entries as files in a directory, so the
+ * cache survives restarts and does not use heap between writes. The least
+ * recently used files are deleted once the cache exceeds the size limit.
+ * Files are read and written outside the lock of the index. Each file keeps
+ * a CRC32 of the compressed data, an entry read back is checked against it
+ * and dropped if it is damaged, so a hit does not need to inflate the data.
+ * Files written in another format are dropped as well.
+ *
+ * @author OpenCollab
+ */
+public class CompressedEntryCacheDisk implements CompressedEntryCache {
+
+    private static final String SUFFIX = ".entry";
+
+    /**
+     * The first int of an entry file in the current format
+     */
+    private static final int MAGIC = 0x45504331;
+
+    /**
+     * The directory the entries are stored in
+     */
+    private final Path directory;
+
+    /**
+     * The maximum number of bytes kept on disk
+     */
+    private final long maxBytes;
+
+    /**
+     * The size of each cached file in access order
+     */
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of bytes on disk
+     */
+    private long bytes;
+
+    /**
+     * Creates new instance of CompressedEntryCacheDisk. Entries already in
+     * the directory are added to the cache, oldest first.
+     *
+     * @param directory the directory the entries are stored in
+     * @param maxBytes the maximum number of bytes kept on disk
+     * @throws IOException if the directory could not be created or read
+     */
+    public CompressedEntryCacheDisk(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        loadIndex();
+    }
+
+    /**
+     * Adds the existing entry files to the index in modification order
+     *
+     * @throws IOException
+     */
+    private void loadIndex() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return Long.compare(a.toFile().lastModified(), b.toFile().lastModified());
+            }
+        });
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            index.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            bytes += size;
+        }
+        evict();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompressedEntry get(String key) {
+        synchronized (this) {
+            if (index.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(key + SUFFIX);
+        CompressedEntry entry;
+        try {
+            entry = read(file);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            Logger.getLogger(CompressedEntryCacheDisk.class.getName()).log(Level.WARNING,
+                    "Could not read cached entry " + file + ", it is removed from the cache", ex);
+            remove(key);
+            return null;
+        }
+        if (entry == null) {
+            Logger.getLogger(CompressedEntryCacheDisk.class.getName()).log(Level.WARNING,
+                    "Cached entry {0} does not match its checksum, it is removed from the cache", file);
+            remove(key);
+        }
+        return entry;
+    }
+
+    /**
+     * Reads an entry file and checks the compressed data against the CRC32
+     * stored with it
+     *
+     * @param file
+     * @return the entry or null if the file is damaged or in another format
+     * @throws IOException
+     */
+    private CompressedEntry read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int method = in.readInt();
+            long crc = in.readLong();
+            long size = in.readLong();
+            long dataCrc = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > maxBytes) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            CRC32 check = new CRC32();
+            check.update(data);
+            return check.getValue() == dataCrc ? new CompressedEntry(method, crc, size, data) : null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(String key, CompressedEntry entry) {
+        synchronized (this) {
+            if (entry.getCompressedSize() > maxBytes || index.containsKey(key)) {
+                return;
+            }
+        }
+        Path file = directory.resolve(key + SUFFIX);
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, key, ".tmp");
+            byte[] data = entry.getData();
+            CRC32 dataCrc = new CRC32();
+            dataCrc.update(data);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(entry.getMethod());
+                out.writeLong(entry.getCrc());
+                out.writeLong(entry.getSize());
+                out.writeLong(dataCrc.getValue());
+                out.writeInt(data.length);
+                out.write(data);
+            }
+            long size = Files.size(temp);
+            synchronized (this) {
+                if (index.containsKey(key)) {
+                    return;
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                temp = null;
+                index.put(key, size);
+                bytes += size;
+                evict();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(CompressedEntryCacheDisk.class.getName()).log(Level.WARNING,
+                    "Could not cache entry " + file, ex);
+        } finally {
+            if (temp != null) {
+                deleteTemp(temp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the cache fits the limit
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            bytes -= entry.getValue();
+            delete(entry.getKey());
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            bytes -= size;
+            delete(key);
+        }
+    }
+
+    private void deleteTemp(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ex) {
+            Logger.getLogger(CompressedEntryCacheDisk.class.getName()).log(Level.WARNING,
+                    "Could not delete " + temp, ex);
+        }
+    }
+
+    private void delete(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key + SUFFIX));
+        } catch (IOException ex) {
+            Logger.getLogger(CompressedEntryCacheDisk.class.getName()).log(Level.WARNING,
+                    "Could not delete cached entry " + key, ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMaxEntrySize() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes on disk
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return the maxBytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+}
@@ -0,0 +1,119 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.api.CompressedEntryCache;
+import coza.opencollab.epub.creator.util.CompressedEntry;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * CompressedEntryCache that keeps the entries on the heap. The least recently
+ * used entries are evicted once the compressed data exceeds the size limit.
+ *
+ * @author OpenCollab
+ */
+public class CompressedEntryCacheLru implements CompressedEntryCache {
+
+    /**
+     * The maximum number of compressed bytes kept in the cache
+     */
+    private final long maxBytes;
+
+    /**
+     * The cached entries in access order
+     */
+    private final LinkedHashMap<String, CompressedEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of compressed bytes in the cache
+     */
+    private long bytes;
+
+    /**
+     * Creates new instance of CompressedEntryCacheLru
+     *
+     * @param maxBytes the maximum number of compressed bytes kept in the
+     * cache
+     */
+    public CompressedEntryCacheLru(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized CompressedEntry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void put(String key, CompressedEntry entry) {
+        if (entry.getCompressedSize() > maxBytes) {
+            return;
+        }
+        CompressedEntry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.getCompressedSize();
+        }
+        bytes += entry.getCompressedSize();
+        Iterator<Map.Entry<String, CompressedEntry>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().getValue().getCompressedSize();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getMaxEntrySize() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of compressed bytes in the cache
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the maxBytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+}
@@ -0,0 +1,243 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.api.CompressionPolicy;
+import coza.opencollab.epub.creator.model.ByteArrayContentSource;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Default implementation of the CompressionPolicy. Media types that are
+ * already compressed and very small content are STORED. Content of other
+ * binary types is sampled, if the first bytes look random the content is
+ * STORED as well. Everything else is deflated with the configured level.
+ *
+ * Use Deflater.BEST_SPEED for books generated on demand and
+ * Deflater.BEST_COMPRESSION for archival builds.
+ *
+ * The policy is shared by the threads writing a book, the settings are
+ * volatile and the stored media types are copied into an unmodifiable set so
+ * a policy can be reconfigured while books are written.
+ *
+ * @author OpenCollab
+ */
+public class CompressionPolicyDefault implements CompressionPolicy {
+
+    /**
+     * The deflate level used for content that is compressed
+     */
+    private volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Media types that are already compressed, deflating them again gains
+     * almost nothing
+     */
+    private volatile Set<String> storedMediaTypes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "image/jpeg", "image/png", "image/gif", "audio/mpeg", "audio/mp4", "audio/ogg", "video/mp4",
+            "video/webm", "application/font-woff", "font/woff", "font/woff2", "application/epub+zip")));
+
+    /**
+     * Content smaller than this is STORED, the deflate overhead is larger
+     * than the gain
+     */
+    private volatile long minDeflateSize = 64;
+
+    /**
+     * The number of bytes sampled to estimate the entropy of binary content,
+     * 0 disables sampling
+     */
+    private volatile int entropySampleSize = 4096;
+
+    /**
+     * Content with a sampled entropy above this (in bits per byte, at most 8)
+     * is STORED
+     */
+    private volatile double maxEntropy = 7.5;
+
+    public CompressionPolicyDefault() {
+    }
+
+    /**
+     * @param level the deflate level used for content that is compressed
+     * @throws IllegalArgumentException if the level is not a deflate level
+     */
+    public CompressionPolicyDefault(int level) {
+        setLevel(level);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCompressionLevel(Content content) throws IOException {
+        String mediaType = content.getMediaType();
+        if (mediaType != null && storedMediaTypes.contains(mediaType)) {
+            return Deflater.NO_COMPRESSION;
+        }
+        long size = content.getSize();
+        if (size >= 0 && size < minDeflateSize) {
+            return Deflater.NO_COMPRESSION;
+        }
+        int sampleSize = entropySampleSize;
+        if (sampleSize > 0 && !isText(mediaType) && content.getSource() != null
+                && sampleEntropy(content.getSource(), sampleSize) > maxEntropy) {
+            return Deflater.NO_COMPRESSION;
+        }
+        return level;
+    }
+
+    /**
+     * Indicates whether the media type is a text format, these compress well
+     * and are not sampled
+     *
+     * @param mediaType
+     * @return
+     */
+    private boolean isText(String mediaType) {
+        return mediaType != null && (mediaType.startsWith("text/") || mediaType.endsWith("xml")
+                || mediaType.endsWith("javascript") || mediaType.endsWith("json"));
+    }
+
+    /**
+     * Calculates the Shannon entropy of the first bytes of the source. Sources
+     * that can only be read once are not sampled.
+     *
+     * @param source
+     * @param sampleSize
+     * @return the entropy in bits per byte
+     * @throws IOException
+     */
+    private double sampleEntropy(ContentSource source, int sampleSize) throws IOException {
+        byte[] sample;
+        int length;
+        if (source instanceof ByteArrayContentSource) {
+            sample = ((ByteArrayContentSource) source).getBytes();
+            length = Math.min(sample.length, sampleSize);
+        } else if (source.isRepeatable()) {
+            sample = new byte[sampleSize];
+            try (InputStream in = source.openStream()) {
+                length = IOUtils.read(in, sample);
+            }
+        } else {
+            return 0;
+        }
+        if (length == 0) {
+            return 0;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[sample[i] & 0xFF]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    /**
+     * @return the level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @param level the level to set, Deflater.DEFAULT_COMPRESSION or between
+     * Deflater.NO_COMPRESSION and Deflater.BEST_COMPRESSION
+     * @throws IllegalArgumentException if the level is not a deflate level
+     */
+    public void setLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level " + level);
+        }
+        this.level = level;
+    }
+
+    /**
+     * @return the storedMediaTypes, the set can not be modified
+     */
+    public Set<String> getStoredMediaTypes() {
+        return storedMediaTypes;
+    }
+
+    /**
+     * @param storedMediaTypes the storedMediaTypes to set, the set is copied
+     */
+    public void setStoredMediaTypes(Set<String> storedMediaTypes) {
+        this.storedMediaTypes = Collections.unmodifiableSet(new HashSet<>(storedMediaTypes));
+    }
+
+    /**
+     * @return the minDeflateSize
+     */
+    public long getMinDeflateSize() {
+        return minDeflateSize;
+    }
+
+    /**
+     * @param minDeflateSize the minDeflateSize to set
+     */
+    public void setMinDeflateSize(long minDeflateSize) {
+        this.minDeflateSize = minDeflateSize;
+    }
+
+    /**
+     * @return the entropySampleSize
+     */
+    public int getEntropySampleSize() {
+        return entropySampleSize;
+    }
+
+    /**
+     * @param entropySampleSize the entropySampleSize to set
+     */
+    public void setEntropySampleSize(int entropySampleSize) {
+        this.entropySampleSize = entropySampleSize;
+    }
+
+    /**
+     * @return the maxEntropy
+     */
+    public double getMaxEntropy() {
+        return maxEntropy;
+    }
+
+    /**
+     * @param maxEntropy the maxEntropy to set
+     */
+    public void setMaxEntropy(double maxEntropy) {
+        this.maxEntropy = maxEntropy;
+    }
+
+}
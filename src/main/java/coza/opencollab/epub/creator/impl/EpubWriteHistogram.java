@@ -0,0 +1,261 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * EpubWriteListener that aggregates the timings and sizes of all the books
+ * written into histograms. It is thread-safe and does not allocate when it is
+ * called, so one instance can be shared by all the writers of an application
+ * and read periodically.
+ *
+ * @author OpenCollab
+ */
+public class EpubWriteHistogram extends EpubWriteListenerAdapter {
+
+    private final Histogram writeNanos = new Histogram();
+
+    private final Histogram tocNanos = new Histogram();
+
+    private final Histogram opfNanos = new Histogram();
+
+    private final Histogram entryNanos = new Histogram();
+
+    private final Histogram entrySizes = new Histogram();
+
+    private final Histogram bookSizes = new Histogram();
+
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tocBuilt(EpubBook book, long nanos) {
+        tocNanos.record(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void opfBuilt(EpubBook book, long nanos) {
+        opfNanos.record(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void entryWritten(String href, String mediaType, long size, long compressedSize, long nanos) {
+        entryNanos.record(nanos);
+        entrySizes.record(size);
+        uncompressedBytes.addAndGet(size);
+        compressedBytes.addAndGet(compressedSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeFinished(EpubBook book, long bytesWritten, long nanos) {
+        writeNanos.record(nanos);
+        bookSizes.record(bytesWritten);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeFailed(EpubBook book, Exception exception) {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * The compressed size of all the entries relative to their uncompressed
+     * size
+     *
+     * @return the compression ratio or 1 if nothing has been written
+     */
+    public double getCompressionRatio() {
+        long uncompressed = uncompressedBytes.get();
+        return uncompressed == 0 ? 1 : (double) compressedBytes.get() / uncompressed;
+    }
+
+    /**
+     * @return the time it took to write the books in nanoseconds
+     */
+    public Histogram getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return the time it took to build the navigation documents in
+     * nanoseconds
+     */
+    public Histogram getTocNanos() {
+        return tocNanos;
+    }
+
+    /**
+     * @return the time it took to build the OPFs in nanoseconds
+     */
+    public Histogram getOpfNanos() {
+        return opfNanos;
+    }
+
+    /**
+     * @return the time it took to write the entries in nanoseconds
+     */
+    public Histogram getEntryNanos() {
+        return entryNanos;
+    }
+
+    /**
+     * @return the uncompressed sizes of the entries in bytes
+     */
+    public Histogram getEntrySizes() {
+        return entrySizes;
+    }
+
+    /**
+     * @return the sizes of the books written in bytes
+     */
+    public Histogram getBookSizes() {
+        return bookSizes;
+    }
+
+    /**
+     * @return the uncompressed size of all the entries in bytes
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.get();
+    }
+
+    /**
+     * @return the compressed size of all the entries in bytes
+     */
+    public long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    /**
+     * @return the number of books that could not be written
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * Histogram with power of two buckets. Bucket i counts the values from
+     * 2^(i-1) up to 2^i - 1, bucket 0 counts the values below 1.
+     */
+    public static class Histogram {
+
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong total = new AtomicLong();
+
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Adds a value to the histogram
+         *
+         * @param value the value
+         */
+        public void record(long value) {
+            long positive = Math.max(value, 0);
+            buckets.incrementAndGet(Math.min(BUCKETS - Long.numberOfLeadingZeros(positive), BUCKETS - 1));
+            count.incrementAndGet();
+            total.addAndGet(positive);
+            long current = max.get();
+            while (positive > current && !max.compareAndSet(current, positive)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Returns the upper bound of the bucket the percentile falls in
+         *
+         * @param percentile the percentile from 0 to 100
+         * @return the value the percentile of the values are below
+         */
+        public long getPercentile(double percentile) {
+            long target = (long) Math.ceil(count.get() * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0) {
+                    return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        /**
+         * @return the number of values in the bucket
+         * @param bucket the bucket index
+         */
+        public long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        /**
+         * @return the number of values
+         */
+        public long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the sum of the values
+         */
+        public long getTotal() {
+            return total.get();
+        }
+
+        /**
+         * @return the largest value
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return the average value or 0 if there are no values
+         */
+        public double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) total.get() / n;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.api.EpubWriteListener;
+import coza.opencollab.epub.creator.model.EpubBook;
+
+/**
+ * EpubWriteListener that ignores all the callbacks. Extend it to implement
+ * only the callbacks needed.
+ *
+ * @author OpenCollab
+ */
+public class EpubWriteListenerAdapter implements EpubWriteListener {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeStarted(EpubBook book) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void tocBuilt(EpubBook book, long nanos) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void opfBuilt(EpubBook book, long nanos) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void entryStarted(String href, String mediaType) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void entryWritten(String href, String mediaType, long size, long compressedSize, long nanos) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeFinished(EpubBook book, long bytesWritten, long nanos) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeFailed(EpubBook book, Exception exception) {
+    }
+
+}
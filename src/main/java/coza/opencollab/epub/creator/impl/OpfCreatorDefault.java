@@ -24,13 +24,14 @@ import coza.opencollab.epub.creator.EpubConstants;
 import coza.opencollab.epub.creator.api.OpfCreator;
 import coza.opencollab.epub.creator.model.Content;
 import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.util.EpubEvents;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 import org.htmlcleaner.CleanerProperties;
 import org.htmlcleaner.ContentNode;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.PrettyXmlSerializer;
-import org.htmlcleaner.Serializer;
 import org.htmlcleaner.TagNode;
 
 /**
@@ -48,22 +49,16 @@ public class OpfCreatorDefault implements OpfCreator {
     private String opfXML = EpubConstants.OPF_XML;
 
     /**
-     * HtmlCleaner used to clean the XHTML document
+     * The HtmlCleaner properties, a new HtmlCleaner and serializer is created
+     * for every document so the creator can be shared between threads
      */
-    private final HtmlCleaner cleaner;
-
-    /**
-     * XmlSerializer used to format to XML String output
-     */
-    private final Serializer htmlSetdown;
+    private final CleanerProperties htmlProperties;
 
     public OpfCreatorDefault() {
-        cleaner = new HtmlCleaner();
-        CleanerProperties htmlProperties = cleaner.getProperties();
+        htmlProperties = new CleanerProperties();
         htmlProperties.setOmitHtmlEnvelope(true);
         htmlProperties.setAdvancedXmlEscape(false);
         htmlProperties.setUseEmptyElementTags(true);
-        htmlSetdown = new PrettyXmlSerializer(htmlProperties);
     }
 
     /**
@@ -71,11 +66,14 @@ public class OpfCreatorDefault implements OpfCreator {
      */
     @Override
     public String createOpfString(EpubBook book) {
-        TagNode tagNode = cleaner.clean(opfXML);
+        Object event = EpubEvents.opfStarted(book.getId());
+        TagNode tagNode = new HtmlCleaner(htmlProperties).clean(opfXML);
         addMetaDataTags(tagNode, book);
         addManifestTags(tagNode, book);
         addSpineTags(tagNode, book);
-        return htmlSetdown.getAsString(tagNode);
+        String opf = new PrettyXmlSerializer(htmlProperties).getAsString(tagNode);
+        EpubEvents.opfFinished(event, book.getContents().size());
+        return opf;
     }
 
     /**
@@ -89,7 +87,10 @@ public class OpfCreatorDefault implements OpfCreator {
         addNodeData(metaNode, "dc:identifier", book.getId());
         addNodeData(metaNode, "dc:title", book.getTitle());
         addNodeData(metaNode, "dc:language", book.getLanguage());
-        addNodeData(metaNode, "meta", new SimpleDateFormat("yyyy-MM-dd'T'hh:mm:ss'Z'").format(new Date()));
+        Date modified = book.getModified() == null ? new Date() : book.getModified();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        addNodeData(metaNode, "meta", format.format(modified));
         if (book.getAuthor() != null) {
             TagNode creatorNode = new TagNode("dc:creator");
             creatorNode.addChild(new ContentNode(book.getAuthor()));
@@ -0,0 +1,204 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.api.OpfStreamCreator;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.util.EpubEvents;
+import coza.opencollab.epub.creator.util.XmlWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * OpfCreator that writes the EPUB3 Package Document directly to a stream. No
+ * template is parsed and no document tree is built, so memory use does not
+ * depend on the number of manifest items. The output is the same as that of
+ * the OpfCreatorDefault with its default template. If a template is set with
+ * setOpfXML the OPF is created by an OpfCreatorDefault with that template
+ * instead. This implementation can be shared between threads.
+ *
+ * @author OpenCollab
+ */
+public class OpfCreatorStreaming implements OpfStreamCreator {
+
+    /**
+     * The creator of the OPF from a custom template, null to stream the OPF
+     */
+    private volatile OpfCreatorDefault templateCreator;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String createOpfString(EpubBook book) {
+        OpfCreatorDefault creator = templateCreator;
+        if (creator != null) {
+            return creator.createOpfString(book);
+        }
+        StringWriter out = new StringWriter();
+        try {
+            writeOpf(book, out);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not create the OPF", ex);
+        }
+        return out.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeOpf(EpubBook book, OutputStream out) throws IOException {
+        OpfCreatorDefault creator = templateCreator;
+        if (creator != null) {
+            out.write(creator.createOpfString(book).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        writeOpf(book, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes the OPF file to the Writer
+     *
+     * @param book
+     * @param out
+     * @throws IOException
+     */
+    private void writeOpf(EpubBook book, Writer out) throws IOException {
+        Object event = EpubEvents.opfStarted(book.getId());
+        XmlWriter xml = new XmlWriter(out);
+        xml.writeDeclaration();
+        xml.startElement("package")
+                .attribute("xmlns", "http://www.idpf.org/2007/opf")
+                .attribute("version", "3.0")
+                .attribute("unique-identifier", "uid");
+        writeMetaData(xml, book);
+        writeManifest(xml, book);
+        writeSpine(xml, book);
+        xml.endDocument();
+        EpubEvents.opfFinished(event, book.getContents().size());
+    }
+
+    /**
+     * Writes the required meta data
+     *
+     * @param xml
+     * @param book
+     * @throws IOException
+     */
+    private void writeMetaData(XmlWriter xml, EpubBook book) throws IOException {
+        xml.startElement("metadata").attribute("xmlns:dc", "http://purl.org/dc/elements/1.1/");
+        xml.startElement("dc:identifier").attribute("id", "uid").text(book.getId()).endElement();
+        xml.textElement("dc:title", book.getTitle());
+        xml.textElement("dc:language", book.getLanguage());
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date modified = book.getModified() == null ? new Date() : book.getModified();
+        xml.startElement("meta").attribute("property", "dcterms:modified").text(format.format(modified)).endElement();
+        if (book.getAuthor() != null) {
+            xml.textElement("dc:creator", book.getAuthor());
+        }
+        xml.endElement();
+    }
+
+    /**
+     * Writes an item tag to the manifest for each Content object
+     *
+     * @param xml
+     * @param book
+     * @throws IOException
+     */
+    private void writeManifest(XmlWriter xml, EpubBook book) throws IOException {
+        xml.startElement("manifest");
+        for (Content content : book.getContents()) {
+            xml.startElement("item")
+                    .attribute("href", content.getHref())
+                    .attribute("id", content.getId())
+                    .attribute("media-type", content.getMediaType())
+                    .attribute("properties", content.getProperties());
+            if (content.hasFallBack()) {
+                xml.attribute("fallback", content.getFallBack().getId());
+            }
+            xml.endElement();
+        }
+        xml.endElement();
+    }
+
+    /**
+     * Writes item ref tags for all Content objects that must be added to the
+     * spine
+     *
+     * @param xml
+     * @param book
+     * @throws IOException
+     */
+    private void writeSpine(XmlWriter xml, EpubBook book) throws IOException {
+        xml.startElement("spine");
+        for (Content content : book.getContents()) {
+            if (content.isSpine()) {
+                xml.startElement("itemref").attribute("idref", content.getId());
+                if (!content.isLinear()) {
+                    xml.attribute("linear", "no");
+                }
+                xml.endElement();
+            }
+        }
+        xml.endElement();
+    }
+
+    /**
+     * The template XML used for the OPF file, null if the OPF is streamed
+     * without a template
+     *
+     * @return the OPF XML text
+     */
+    public String getOpfXML() {
+        OpfCreatorDefault creator = templateCreator;
+        return creator == null ? null : creator.getOpfXML();
+    }
+
+    /**
+     * Sets a template for the OPF file, see OpfCreatorDefault.setOpfXML. The
+     * OPF is then built as a document tree from the template, null streams
+     * the OPF again
+     *
+     * @param opfXML the OPF XML to set
+     */
+    public void setOpfXML(String opfXML) {
+        if (opfXML == null) {
+            templateCreator = null;
+            return;
+        }
+        OpfCreatorDefault creator = new OpfCreatorDefault();
+        creator.setOpfXML(opfXML);
+        templateCreator = creator;
+    }
+
+}
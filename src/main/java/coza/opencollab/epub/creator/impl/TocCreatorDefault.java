@@ -26,6 +26,9 @@ import coza.opencollab.epub.creator.model.Content;
 import coza.opencollab.epub.creator.model.EpubBook;
 import coza.opencollab.epub.creator.model.Landmark;
 import coza.opencollab.epub.creator.model.TocLink;
+import coza.opencollab.epub.creator.util.EpubEvents;
+import coza.opencollab.epub.creator.util.HeadingTocBuilder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.collections.CollectionUtils;
@@ -33,7 +36,6 @@ import org.htmlcleaner.CleanerProperties;
 import org.htmlcleaner.ContentNode;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.PrettyXmlSerializer;
-import org.htmlcleaner.Serializer;
 import org.htmlcleaner.TagNode;
 
 /**
@@ -45,26 +47,26 @@ import org.htmlcleaner.TagNode;
 public class TocCreatorDefault implements TocCreator {
 
     /**
-     * HtmlCleaner used to alter the XHTML document
+     * The HtmlCleaner properties, a new HtmlCleaner and serializer is created
+     * for every document so the creator can be shared between threads
      */
-    private final HtmlCleaner cleaner;
+    private final CleanerProperties htmlProperties;
 
     private String href = EpubConstants.TOC_FILE_NAME;
 
     private String tocHtml = EpubConstants.TOC_XML;
 
     /**
-     * XmlSerializer used to format to XML String output
+     * Builds the nested auto TOC from the headings of the content. If this is
+     * null the auto TOC has a link for each content object
      */
-    private final Serializer htmlSetdown;
+    private HeadingTocBuilder headingTocBuilder;
 
     public TocCreatorDefault() {
-        cleaner = new HtmlCleaner();
-        CleanerProperties htmlProperties = cleaner.getProperties();
+        htmlProperties = new CleanerProperties();
         htmlProperties.setOmitHtmlEnvelope(false);
         htmlProperties.setAdvancedXmlEscape(false);
         htmlProperties.setUseEmptyElementTags(true);
-        htmlSetdown = new PrettyXmlSerializer(htmlProperties);
     }
 
     /**
@@ -72,13 +74,15 @@ public class TocCreatorDefault implements TocCreator {
      */
     @Override
     public Content createTocFromBook(EpubBook book) {
+        Object event = EpubEvents.tocStarted(book.getId());
         List<TocLink> links = book.getTocLinks();
         if (book.isAutoToc()) {
             links = generateAutoLinks(book);
         }
         List<Landmark> landmarks = book.getLandmarks();
-        String tocString = createTocHtml(links, landmarks, getTocHtml());
-        Content toc = new Content("application/xhtml+xml", getHref(), tocString.getBytes());
+        String tocString = createTocHtml(book.getTitle(), links, landmarks, getTocHtml());
+        EpubEvents.tocFinished(event, links == null ? 0 : links.size());
+        Content toc = new Content("application/xhtml+xml", getHref(), tocString.getBytes(StandardCharsets.UTF_8));
         toc.setProperties("nav");
         toc.setId("toc");
         toc.setLinear(false);
@@ -88,30 +92,38 @@ public class TocCreatorDefault implements TocCreator {
     /**
      * Builds the TOC HTML content from the EpubBook TocLinks
      *
-     * @param book the EpubBook
+     * @param title the title of the book, replaces a {0} title in the
+     * template
+     * @param links the TOC links
+     * @param landmarks the landmarks
+     * @param tocHtml the template
      * @return the TOC HTML String
      */
-    private String createTocHtml(List<TocLink> links, List<Landmark> landmarks, String tocHtml) {
-        TagNode tagNode = cleaner.clean(tocHtml);
+    private String createTocHtml(String title, List<TocLink> links, List<Landmark> landmarks, String tocHtml) {
+        TagNode tagNode = new HtmlCleaner(htmlProperties).clean(tocHtml);
+        TagNode titleNode = tagNode.findElementByName("title", true);
+        if (titleNode != null && "{0}".equals(titleNode.getText().toString().trim())) {
+            titleNode.removeAllChildren();
+            titleNode.addChild(new ContentNode(title));
+        }
         if (!CollectionUtils.isEmpty(links)) {
-            addTocLinks(tagNode, links);
+            TagNode navNode = tagNode.findElementByAttValue("epub:type", "toc", true, false);
+            addTocLinks(navNode.findElementByName("ol", true), links);
         }
         if (!CollectionUtils.isEmpty(landmarks)) {
             addLandmarks(tagNode, landmarks);
         }
-        return htmlSetdown.getAsString(tagNode);
+        return new PrettyXmlSerializer(htmlProperties).getAsString(tagNode);
     }
 
     /**
      * Recursive method adding links and sub links to the TOC Navigation
      * Document
      *
-     * @param tagNode
+     * @param parentNode the ol element to add the links to
      * @param links
      */
-    private void addTocLinks(TagNode tagNode, List<TocLink> links) {
-        TagNode navNode = tagNode.findElementByAttValue("epub:type", "toc", true, false);
-        TagNode parentNode = navNode.findElementByName("ol", true);
+    private void addTocLinks(TagNode parentNode, List<TocLink> links) {
         for (TocLink toc : links) {
             TagNode linkNode = buildLinkNode(toc);
             if (!CollectionUtils.isEmpty(toc.getTocChildLinks())) {
@@ -150,7 +162,7 @@ public class TocCreatorDefault implements TocCreator {
         aNode.addAttribute("href", link.getHref());
         aNode.addChild(new ContentNode(link.getTitle()));
         if (link.getAltTitle() != null) {
-            aNode.addAttribute("title", link.getHref());
+            aNode.addAttribute("title", link.getAltTitle());
         }
         linkNode.addChild(aNode);
         return linkNode;
@@ -180,6 +192,9 @@ public class TocCreatorDefault implements TocCreator {
      * @return
      */
     private List<TocLink> generateAutoLinks(EpubBook book) {
+        if (headingTocBuilder != null) {
+            return headingTocBuilder.build(book);
+        }
         List<TocLink> links = new ArrayList();
         for (Content content : book.getContents()) {
             if (content.isToc()) {
@@ -203,6 +218,23 @@ public class TocCreatorDefault implements TocCreator {
         this.href = href;
     }
 
+    /**
+     * @return the headingTocBuilder
+     */
+    public HeadingTocBuilder getHeadingTocBuilder() {
+        return headingTocBuilder;
+    }
+
+    /**
+     * Sets the builder of a nested auto TOC from the headings of the content,
+     * null creates a link for each content object in the TOC
+     *
+     * @param headingTocBuilder the headingTocBuilder to set
+     */
+    public void setHeadingTocBuilder(HeadingTocBuilder headingTocBuilder) {
+        this.headingTocBuilder = headingTocBuilder;
+    }
+
     /**
      * @return the tocHtml
      */
@@ -0,0 +1,288 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.EpubConstants;
+import coza.opencollab.epub.creator.api.TocStreamCreator;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.Landmark;
+import coza.opencollab.epub.creator.model.TocLink;
+import coza.opencollab.epub.creator.util.EpubEvents;
+import coza.opencollab.epub.creator.util.HeadingTocBuilder;
+import coza.opencollab.epub.creator.util.XmlWriter;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * TocCreator that writes the EPUB3 Navigation Document directly to a stream
+ * while walking the TocLink trees, so memory grows with the depth of the TOC
+ * and not with the number of links. The links and landmarks are the same as
+ * those of the TocCreatorDefault with its default template, the landmarks
+ * nav is left out if the book has no landmarks. If a template is set with
+ * setTocHtml the navigation document is created by a TocCreatorDefault with
+ * that template instead. This implementation can be shared between threads,
+ * the settings are volatile and read once per navigation document.
+ *
+ * @author OpenCollab
+ */
+public class TocCreatorStreaming implements TocStreamCreator {
+
+    private volatile String href = EpubConstants.TOC_FILE_NAME;
+
+    /**
+     * Builds the nested auto TOC from the headings of the content. If this is
+     * null the auto TOC has a link for each content object
+     */
+    private volatile HeadingTocBuilder headingTocBuilder;
+
+    /**
+     * The template of the navigation document, null to stream it without a
+     * template
+     */
+    private volatile String tocHtml;
+
+    /**
+     * {@inheritDoc}
+     *
+     * The returned Content is only rendered when its source is opened, the
+     * EpubWriter uses writeToc instead.
+     */
+    @Override
+    public Content createTocFromBook(final EpubBook book) {
+        String template = tocHtml;
+        if (template != null) {
+            return templateCreator(template).createTocFromBook(book);
+        }
+        Content toc = new Content("application/xhtml+xml", getHref(), new ContentSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writeToc(book, out);
+                return new ByteArrayInputStream(out.toByteArray());
+            }
+
+            @Override
+            public long getSize() {
+                return -1;
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+        });
+        toc.setProperties("nav");
+        toc.setId("toc");
+        toc.setLinear(false);
+        return toc;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeToc(EpubBook book, OutputStream out) throws IOException {
+        String template = tocHtml;
+        if (template != null) {
+            try (InputStream in = templateCreator(template).createTocFromBook(book).getSource().openStream()) {
+                IOUtils.copy(in, out);
+            }
+            return;
+        }
+        HeadingTocBuilder builder = headingTocBuilder;
+        Object event = EpubEvents.tocStarted(book.getId());
+        int links = 0;
+        XmlWriter xml = new XmlWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        xml.writeDeclaration();
+        xml.startElement("html")
+                .attribute("xmlns", "http://www.w3.org/1999/xhtml")
+                .attribute("xmlns:epub", "http://www.idpf.org/2007/ops");
+        xml.startElement("head");
+        xml.startElement("meta").attribute("charset", "utf-8").endElement();
+        xml.textElement("title", book.getTitle());
+        xml.endElement();
+        xml.startElement("body");
+        xml.startElement("nav").attribute("epub:type", "toc").attribute("id", "toc");
+        xml.startElement("ol");
+        if (book.isAutoToc() && builder != null) {
+            List<TocLink> headingLinks = builder.build(book);
+            writeTocLinks(xml, headingLinks);
+            links = headingLinks.size();
+        } else if (book.isAutoToc()) {
+            links = writeAutoLinks(xml, book);
+        } else if (!CollectionUtils.isEmpty(book.getTocLinks())) {
+            writeTocLinks(xml, book.getTocLinks());
+            links = book.getTocLinks().size();
+        }
+        xml.endElement();
+        xml.endElement();
+        if (!CollectionUtils.isEmpty(book.getLandmarks())) {
+            writeLandmarks(xml, book.getLandmarks());
+        }
+        xml.endDocument();
+        EpubEvents.tocFinished(event, links);
+    }
+
+    /**
+     * Creates the TocCreatorDefault that fills in the template
+     *
+     * @param template
+     * @return
+     */
+    private TocCreatorDefault templateCreator(String template) {
+        TocCreatorDefault creator = new TocCreatorDefault();
+        creator.setHref(href);
+        creator.setHeadingTocBuilder(headingTocBuilder);
+        creator.setTocHtml(template);
+        return creator;
+    }
+
+    /**
+     * Writes a link for all Content that should be included in the Navigation
+     * Document. This will only be used when auto TOC is set
+     *
+     * @param xml
+     * @param book
+     * @return the number of links
+     * @throws IOException
+     */
+    private int writeAutoLinks(XmlWriter xml, EpubBook book) throws IOException {
+        int links = 0;
+        for (Content content : book.getContents()) {
+            if (content.isToc()) {
+                links++;
+                xml.startElement("li");
+                xml.startElement("a").attribute("href", content.getHref()).text(content.getId()).endElement();
+                xml.endElement();
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Recursive method writing links and sub links to the TOC Navigation
+     * Document
+     *
+     * @param xml
+     * @param links
+     * @throws IOException
+     */
+    private void writeTocLinks(XmlWriter xml, List<TocLink> links) throws IOException {
+        for (TocLink link : links) {
+            xml.startElement("li");
+            xml.startElement("a")
+                    .attribute("href", link.getHref())
+                    .attribute("title", link.getAltTitle())
+                    .text(link.getTitle())
+                    .endElement();
+            if (!CollectionUtils.isEmpty(link.getTocChildLinks())) {
+                xml.startElement("ol");
+                writeTocLinks(xml, link.getTocChildLinks());
+                xml.endElement();
+            }
+            xml.endElement();
+        }
+    }
+
+    /**
+     * Writes the landmarks to the Navigation Document
+     *
+     * @param xml
+     * @param landmarks
+     * @throws IOException
+     */
+    private void writeLandmarks(XmlWriter xml, List<Landmark> landmarks) throws IOException {
+        xml.startElement("nav").attribute("epub:type", "landmarks").attribute("hidden", "");
+        xml.startElement("ol");
+        for (Landmark landmark : landmarks) {
+            xml.startElement("li");
+            xml.startElement("a")
+                    .attribute("href", landmark.getHref())
+                    .attribute("epub:type", landmark.getType())
+                    .text(landmark.getTitle())
+                    .endElement();
+            xml.endElement();
+        }
+        xml.endElement();
+        xml.endElement();
+    }
+
+    /**
+     * @return the HREF
+     */
+    public String getHref() {
+        return href;
+    }
+
+    /**
+     * @param href the HREF to set
+     */
+    public void setHref(String href) {
+        this.href = href;
+    }
+
+    /**
+     * @return the headingTocBuilder
+     */
+    public HeadingTocBuilder getHeadingTocBuilder() {
+        return headingTocBuilder;
+    }
+
+    /**
+     * Sets the builder of a nested auto TOC from the headings of the content,
+     * null writes a link for each content object in the TOC
+     *
+     * @param headingTocBuilder the headingTocBuilder to set
+     */
+    public void setHeadingTocBuilder(HeadingTocBuilder headingTocBuilder) {
+        this.headingTocBuilder = headingTocBuilder;
+    }
+
+    /**
+     * @return the tocHtml
+     */
+    public String getTocHtml() {
+        return tocHtml;
+    }
+
+    /**
+     * Sets a template for the navigation document, see
+     * TocCreatorDefault.setTocHtml. The navigation document is then built as
+     * a document tree from the template, null streams it again
+     *
+     * @param tocHtml the tocHtml to set
+     */
+    public void setTocHtml(String tocHtml) {
+        this.tocHtml = tocHtml;
+    }
+
+}
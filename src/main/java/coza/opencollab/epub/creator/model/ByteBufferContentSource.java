@@ -0,0 +1,176 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ContentSource backed by a ByteBuffer, usually a direct or memory-mapped
+ * buffer so large payloads are kept off the Java heap. The EpubWriter writes
+ * STORED entries straight from the buffer to the zip channel.
+ *
+ * The Buffer methods flip and position are called through Buffer, Java 9
+ * added overrides returning ByteBuffer that do not exist on Java 7 and 8.
+ *
+ * @author OpenCollab
+ */
+public class ByteBufferContentSource implements ContentSource {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The content from position to limit
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates new instance of ByteBufferContentSource. The content is the
+     * data between the position and the limit of the buffer, the buffer must
+     * not be changed afterwards
+     *
+     * @param buffer the content
+     */
+    public ByteBufferContentSource(ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+    }
+
+    /**
+     * Maps a file into memory. The mapping stays valid after the file is
+     * closed and is released when the source is garbage collected
+     *
+     * @param path the path of the file
+     * @return the source of the mapped file
+     * @throws IOException if the file could not be mapped
+     */
+    public static ByteBufferContentSource map(Path path) throws IOException {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ByteBufferContentSource(file.map(FileChannel.MapMode.READ_ONLY, 0, file.size()));
+        }
+    }
+
+    /**
+     * Reads a stream into a direct buffer outside the Java heap. Only a small
+     * buffer is used on the heap while reading
+     *
+     * @param in the stream to read, it is not closed
+     * @param sizeHint the expected size or -1 if it is not known
+     * @return the source of the data read
+     * @throws IOException if the stream could not be read
+     */
+    public static ByteBufferContentSource readDirect(InputStream in, int sizeHint) throws IOException {
+        ByteBuffer target = ByteBuffer.allocateDirect(sizeHint > 0 ? sizeHint : BUFFER_SIZE);
+        byte[] chunk = new byte[BUFFER_SIZE];
+        for (int length = in.read(chunk); length != -1; length = in.read(chunk)) {
+            if (target.remaining() < length) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(target.capacity() * 2, target.position() + length));
+                ((Buffer) target).flip();
+                larger.put(target);
+                target = larger;
+            }
+            target.put(chunk, 0, length);
+        }
+        ((Buffer) target).flip();
+        return new ByteBufferContentSource(target);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InputStream openStream() throws IOException {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize() {
+        return buffer.remaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * Returns a read-only view of the content, the position and limit of the
+     * view can be changed freely
+     *
+     * @return the buffer
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Stream reading the data of a buffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int length = Math.min(len, buffer.remaining());
+            buffer.get(b, off, length);
+            return length;
+        }
+
+        @Override
+        public long skip(long n) {
+            int length = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            ((Buffer) buffer).position(buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * ContentSource backed by a ReadableByteChannel. The channel can only be read
+ * once and is closed when the stream returned by openStream is closed.
+ *
+ * @author OpenCollab
+ */
+public class ChannelContentSource implements ContentSource {
+
+    /**
+     * The channel to read the content from
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * The size of the content if known up front
+     */
+    private final long size;
+
+    /**
+     * Indicates whether the channel has been handed out
+     */
+    private boolean opened;
+
+    /**
+     * Creates new instance of ChannelContentSource
+     *
+     * @param channel the channel to read the content from
+     */
+    public ChannelContentSource(ReadableByteChannel channel) {
+        this(channel, -1);
+    }
+
+    /**
+     * Creates new instance of ChannelContentSource
+     *
+     * @param channel the channel to read the content from
+     * @param size the size of the content or -1 if not known
+     */
+    public ChannelContentSource(ReadableByteChannel channel, long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IOException if the channel has already been opened
+     */
+    @Override
+    public synchronized InputStream openStream() throws IOException {
+        if (opened) {
+            throw new IOException("The channel content source can only be read once");
+        }
+        opened = true;
+        return Channels.newInputStream(channel);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+}
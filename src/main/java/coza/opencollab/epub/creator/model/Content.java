@@ -23,6 +23,7 @@ package coza.opencollab.epub.creator.model;
 import coza.opencollab.epub.creator.util.MediaTypeUtil;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import org.apache.commons.io.IOUtils;
 
 /**
@@ -32,6 +33,8 @@ import org.apache.commons.io.IOUtils;
  */
 public class Content {
 
+    private static final ContentList[] NO_OWNERS = new ContentList[0];
+
     /**
      * The MediaType get set as the media-type attribute value in the OPF
      * manifest items
@@ -56,9 +59,9 @@ public class Content {
     private String properties;
 
     /**
-     * The file content
+     * The source of the file content
      */
-    private byte[] content;
+    private ContentSource source;
 
     /**
      * Specifies if it is a linear item in the spine
@@ -80,6 +83,13 @@ public class Content {
      */
     private Content fallBack;
 
+    /**
+     * The ContentLists this content is in, notified when the indexed
+     * properties change. The array is replaced when a list is added or
+     * removed, so it can be iterated without locking
+     */
+    private volatile ContentList[] owners = NO_OWNERS;
+
     /**
      * Creates new instance of Content
      *
@@ -88,13 +98,29 @@ public class Content {
      * @param content the file byte array
      */
     public Content(String mediaType, String href, byte[] content) {
-        if (mediaType == null) {
+        this(mediaType, href, toSource(content));
+    }
+
+    /**
+     * Creates new instance of Content. The source is only read when the
+     * content is written to the EPUB. Without a media type it is taken from
+     * the href extension, or if the extension is not known from the first
+     * bytes of byte array content
+     *
+     * @param mediaType the mime type
+     * @param href the link to the content item
+     * @param source the source of the file content
+     */
+    public Content(String mediaType, String href, ContentSource source) {
+        if (mediaType == null && source instanceof ByteArrayContentSource) {
+            this.mediaType = MediaTypeUtil.getMediaType(href, ((ByteArrayContentSource) source).getBytes());
+        } else if (mediaType == null) {
             this.mediaType = MediaTypeUtil.getMediaTypeFromFilename(href);
         } else {
             this.mediaType = mediaType;
         }
         this.href = href;
-        this.content = content;
+        this.source = source;
     }
 
     /**
@@ -118,10 +144,24 @@ public class Content {
      * @param content the file byte array
      */
     public Content(String mediaType, String href, String id, String properties, byte[] content) {
-        this(mediaType, href, content);
+        this(mediaType, href, id, properties, toSource(content));
+    }
+
+    /**
+     * Creates a new instance of Content. The source is only read when the
+     * content is written to the EPUB
+     *
+     * @param mediaType the mime type
+     * @param href the link to the content item
+     * @param id used as the id attribute value in the OPF manifest items and
+     * the id ref in the spine
+     * @param properties the properties attribute value in the OPF
+     * @param source the source of the file content
+     */
+    public Content(String mediaType, String href, String id, String properties, ContentSource source) {
+        this(mediaType, href, source);
         this.id = id;
         this.properties = properties;
-        this.content = content;
     }
 
     /**
@@ -193,6 +233,35 @@ public class Content {
         this(MediaTypeUtil.getMediaTypeFromFilename(href), href, id, properties, IOUtils.toByteArray(content));
     }
 
+    /**
+     * Wraps a byte array in a ContentSource
+     *
+     * @param content the file byte array, may be null
+     * @return the source or null if the content is null
+     */
+    private static ContentSource toSource(byte[] content) {
+        return content == null ? null : new ByteArrayContentSource(content);
+    }
+
+    /**
+     * Opens a stream to the file content. The caller must close the stream
+     *
+     * @return the stream to read the content from
+     * @throws IOException if the content source could not be opened
+     */
+    public InputStream openStream() throws IOException {
+        return source.openStream();
+    }
+
+    /**
+     * The size of the file content in bytes
+     *
+     * @return the size or -1 if it is not known before the content is read
+     */
+    public long getSize() {
+        return source == null ? -1 : source.getSize();
+    }
+
     /**
      * Indicates whether a fallback content has been set
      *
@@ -214,6 +283,9 @@ public class Content {
      */
     public void setMediaType(String mediaType) {
         this.mediaType = mediaType;
+        for (ContentList owner : owners) {
+            owner.viewsChanged();
+        }
     }
 
     /**
@@ -227,7 +299,11 @@ public class Content {
      * @param href the HREF to set
      */
     public void setHref(String href) {
+        String oldHref = this.href;
         this.href = href;
+        for (ContentList owner : owners) {
+            owner.hrefChanged(this, oldHref);
+        }
     }
 
     /**
@@ -241,7 +317,11 @@ public class Content {
      * @param id the id to set
      */
     public void setId(String id) {
+        String oldId = this.id;
         this.id = id;
+        for (ContentList owner : owners) {
+            owner.idChanged(this, oldId);
+        }
     }
 
     /**
@@ -259,17 +339,49 @@ public class Content {
     }
 
     /**
+     * Returns the file content as a byte array. If the content is backed by a
+     * lazy source the whole source is read into memory, use openStream to
+     * avoid this.
+     *
      * @return the content
      */
     public byte[] getContent() {
-        return content;
+        if (source == null) {
+            return null;
+        }
+        if (source instanceof ByteArrayContentSource) {
+            return ((ByteArrayContentSource) source).getBytes();
+        }
+        try (InputStream in = source.openStream()) {
+            return IOUtils.toByteArray(in);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not read the content of " + href, ex);
+        }
     }
 
     /**
      * @param content the content to set
      */
     public void setContent(byte[] content) {
-        this.content = content;
+        setSource(toSource(content));
+    }
+
+    /**
+     * @return the source
+     */
+    public ContentSource getSource() {
+        return source;
+    }
+
+    /**
+     * @param source the source to set
+     */
+    public void setSource(ContentSource source) {
+        ContentSource oldSource = this.source;
+        this.source = source;
+        for (ContentList owner : owners) {
+            owner.sourceChanged(this, oldSource);
+        }
     }
 
     /**
@@ -298,6 +410,9 @@ public class Content {
      */
     public void setSpine(boolean spine) {
         this.spine = spine;
+        for (ContentList owner : owners) {
+            owner.viewsChanged();
+        }
     }
 
     /**
@@ -312,6 +427,9 @@ public class Content {
      */
     public void setToc(boolean toc) {
         this.toc = toc;
+        for (ContentList owner : owners) {
+            owner.viewsChanged();
+        }
     }
 
     /**
@@ -333,4 +451,35 @@ public class Content {
         this.fallBack = fallBack;
     }
 
+    /**
+     * Called by a ContentList when this content is added to it
+     *
+     * @param list the list
+     */
+    synchronized void addOwner(ContentList list) {
+        ContentList[] current = owners;
+        ContentList[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = list;
+        owners = added;
+    }
+
+    /**
+     * Called by a ContentList when this content is removed from it. The list
+     * is compared by identity, two lists with the same content are equal
+     *
+     * @param list the list
+     */
+    synchronized void removeOwner(ContentList list) {
+        ContentList[] current = owners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == list) {
+                ContentList[] removed = new ContentList[current.length - 1];
+                System.arraycopy(current, 0, removed, 0, i);
+                System.arraycopy(current, i + 1, removed, i, removed.length - i);
+                owners = removed;
+                return;
+            }
+        }
+    }
+
 }
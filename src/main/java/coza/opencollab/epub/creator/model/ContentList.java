@@ -0,0 +1,673 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ordered content of a book, indexed by href and id. Lookup, removal,
+ * replacement and moving by href take constant time. The positional List
+ * methods work as well, but the first positional access after the list has
+ * been changed rebuilds the position index in O(n), so alternating changes
+ * and positional access is O(n) per access. Iterate or use the href methods
+ * when changing the list.
+ *
+ * The indexes are updated when the href or id of a content object in the
+ * list is changed. A content object can be in several ContentLists, for
+ * example the contents of several books, but only once in each list. A
+ * content object with an href or id already in the list is added but only
+ * the first one is found by getByHref and getById.
+ *
+ * @author OpenCollab
+ */
+public class ContentList extends AbstractList<Content> {
+
+    /**
+     * The sentinel of the circular linked list of nodes
+     */
+    private final Node header = new Node(null);
+
+    private final Map<Content, Node> nodes = new IdentityHashMap<>();
+
+    private final Map<String, Node> byHref = new HashMap<>();
+
+    private final Map<String, Node> byId = new HashMap<>();
+
+    /**
+     * The number of nodes with an href that is already indexed
+     */
+    private int duplicateHrefs;
+
+    /**
+     * The number of nodes with an id that is already indexed
+     */
+    private int duplicateIds;
+
+    /**
+     * The nodes by position, built when a position is first accessed after
+     * the list has been changed
+     */
+    private volatile Node[] positions;
+
+    private volatile List<Content> spineItems;
+
+    private volatile List<Content> tocItems;
+
+    private final Map<String, List<Content>> mediaTypeItems = new ConcurrentHashMap<>();
+
+    /**
+     * The book with this list as its contents, notified when the source of
+     * content in the list changes
+     */
+    EpubBook book;
+
+    /**
+     * Creates new instance of ContentList
+     */
+    public ContentList() {
+        header.previous = header;
+        header.next = header;
+    }
+
+    /**
+     * Creates new instance of ContentList with content
+     *
+     * @param contents the content in order
+     */
+    public ContentList(Collection<? extends Content> contents) {
+        this();
+        addAll(contents);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Content get(int index) {
+        return node(index).content;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Content set(int index, Content content) {
+        return replace(node(index), content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(int index, Content content) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        insertBefore(index == size() ? header : node(index), content);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Content remove(int index) {
+        Node node = node(index);
+        unlink(node);
+        return node.content;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean contains(Object o) {
+        return nodes.containsKey(o);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(Object o) {
+        Node node = nodes.get(o);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        for (Content content : nodes.keySet()) {
+            content.removeOwner(this);
+        }
+        nodes.clear();
+        byHref.clear();
+        byId.clear();
+        duplicateHrefs = 0;
+        duplicateIds = 0;
+        header.previous = header;
+        header.next = header;
+        changed();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<Content> iterator() {
+        return new NodeIterator();
+    }
+
+    /**
+     * Returns the content with the href
+     *
+     * @param href the href
+     * @return the content or null if there is no content with the href
+     */
+    public Content getByHref(String href) {
+        Node node = byHref.get(href);
+        return node == null ? null : node.content;
+    }
+
+    /**
+     * Returns the content with the id
+     *
+     * @param id the id
+     * @return the content or null if there is no content with the id
+     */
+    public Content getById(String id) {
+        Node node = byId.get(id);
+        return node == null ? null : node.content;
+    }
+
+    /**
+     * Removes the content with the href
+     *
+     * @param href the href
+     * @return the content removed or null if there is no content with the
+     * href
+     */
+    public Content removeByHref(String href) {
+        Node node = byHref.get(href);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.content;
+    }
+
+    /**
+     * Replaces the content with the href, the new content takes its position
+     *
+     * @param href the href of the content to replace
+     * @param content the new content
+     * @return the content replaced
+     * @throws NoSuchElementException if there is no content with the href
+     */
+    public Content replace(String href, Content content) {
+        return replace(nodeByHref(href), content);
+    }
+
+    /**
+     * Inserts content before the content with the href
+     *
+     * @param href the href of the content to insert before
+     * @param content the content to insert
+     * @throws NoSuchElementException if there is no content with the href
+     */
+    public void addBefore(String href, Content content) {
+        insertBefore(nodeByHref(href), content);
+    }
+
+    /**
+     * Inserts content after the content with the href
+     *
+     * @param href the href of the content to insert after
+     * @param content the content to insert
+     * @throws NoSuchElementException if there is no content with the href
+     */
+    public void addAfter(String href, Content content) {
+        insertBefore(nodeByHref(href).next, content);
+    }
+
+    /**
+     * Moves the content with the href before other content
+     *
+     * @param href the href of the content to move
+     * @param targetHref the href of the content to move before
+     * @throws NoSuchElementException if there is no content with one of the
+     * hrefs
+     */
+    public void moveBefore(String href, String targetHref) {
+        move(nodeByHref(href), nodeByHref(targetHref));
+    }
+
+    /**
+     * Moves the content with the href after other content
+     *
+     * @param href the href of the content to move
+     * @param targetHref the href of the content to move after
+     * @throws NoSuchElementException if there is no content with one of the
+     * hrefs
+     */
+    public void moveAfter(String href, String targetHref) {
+        move(nodeByHref(href), nodeByHref(targetHref).next);
+    }
+
+    /**
+     * Returns the content in the spine, the list is kept until the content
+     * changes
+     *
+     * @return the unmodifiable list of spine content in order
+     */
+    public List<Content> getSpineItems() {
+        List<Content> items = spineItems;
+        if (items == null) {
+            items = filter(true, false, null);
+            spineItems = items;
+        }
+        return items;
+    }
+
+    /**
+     * Returns the content in the TOC, the list is kept until the content
+     * changes
+     *
+     * @return the unmodifiable list of TOC content in order
+     */
+    public List<Content> getTocItems() {
+        List<Content> items = tocItems;
+        if (items == null) {
+            items = filter(false, true, null);
+            tocItems = items;
+        }
+        return items;
+    }
+
+    /**
+     * Returns the content with a media type, the list is kept until the
+     * content changes
+     *
+     * @param mediaType the media type
+     * @return the unmodifiable list of content with the media type in order
+     */
+    public List<Content> getByMediaType(String mediaType) {
+        if (mediaType == null) {
+            return filter(false, false, null);
+        }
+        List<Content> items = mediaTypeItems.get(mediaType);
+        if (items == null) {
+            items = filter(false, false, mediaType);
+            mediaTypeItems.put(mediaType, items);
+        }
+        return items;
+    }
+
+    /**
+     * Returns the hrefs in the list
+     *
+     * @return a view of the hrefs, the set can not be modified
+     */
+    Set<String> getHrefs() {
+        return Collections.unmodifiableSet(byHref.keySet());
+    }
+
+    /**
+     * Called by the content when its href changes
+     *
+     * @param content
+     * @param oldHref
+     */
+    void hrefChanged(Content content, String oldHref) {
+        Node node = nodes.get(content);
+        if (node != null) {
+            removeKey(byHref, oldHref, node, true);
+            addKey(byHref, content.getHref(), node, true);
+        }
+    }
+
+    /**
+     * Called by the content when its id changes
+     *
+     * @param content
+     * @param oldId
+     */
+    void idChanged(Content content, String oldId) {
+        Node node = nodes.get(content);
+        if (node != null) {
+            removeKey(byId, oldId, node, false);
+            addKey(byId, content.getId(), node, false);
+        }
+    }
+
+    /**
+     * Called by the content when its source changes
+     *
+     * @param content
+     * @param oldSource
+     */
+    void sourceChanged(Content content, ContentSource oldSource) {
+        if (book != null && nodes.containsKey(content)) {
+            book.sourceChanged(content, oldSource);
+        }
+    }
+
+    /**
+     * Called by the content when its media type, spine or TOC flag changes
+     */
+    void viewsChanged() {
+        spineItems = null;
+        tocItems = null;
+        mediaTypeItems.clear();
+    }
+
+    /**
+     * Returns the node at a position, the position index is rebuilt if the
+     * list has been changed
+     *
+     * @param index
+     * @return
+     */
+    private Node node(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node[] current = positions;
+        if (current == null) {
+            current = new Node[size()];
+            int i = 0;
+            for (Node node = header.next; node != header; node = node.next) {
+                current[i++] = node;
+            }
+            positions = current;
+        }
+        return current[index];
+    }
+
+    private Node nodeByHref(String href) {
+        Node node = byHref.get(href);
+        if (node == null) {
+            throw new NoSuchElementException("No content with href " + href);
+        }
+        return node;
+    }
+
+    /**
+     * Links new content before a node
+     *
+     * @param before
+     * @param content
+     */
+    private void insertBefore(Node before, Content content) {
+        checkNotInList(content);
+        Node node = new Node(content);
+        link(node, before);
+        nodes.put(content, node);
+        addKey(byHref, content.getHref(), node, true);
+        addKey(byId, content.getId(), node, false);
+        content.addOwner(this);
+        changed();
+    }
+
+    /**
+     * Removes a node
+     *
+     * @param node
+     */
+    private void unlink(Node node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        nodes.remove(node.content);
+        removeKey(byHref, node.content.getHref(), node, true);
+        removeKey(byId, node.content.getId(), node, false);
+        node.content.removeOwner(this);
+        changed();
+    }
+
+    /**
+     * Replaces the content of a node
+     *
+     * @param node
+     * @param content
+     * @return the content replaced
+     */
+    private Content replace(Node node, Content content) {
+        Content old = node.content;
+        if (old == content) {
+            return old;
+        }
+        checkNotInList(content);
+        nodes.remove(old);
+        removeKey(byHref, old.getHref(), node, true);
+        removeKey(byId, old.getId(), node, false);
+        old.removeOwner(this);
+        node.content = content;
+        nodes.put(content, node);
+        addKey(byHref, content.getHref(), node, true);
+        addKey(byId, content.getId(), node, false);
+        content.addOwner(this);
+        changed();
+        return old;
+    }
+
+    /**
+     * Checks that content is not in this list, the same content can be in
+     * other lists
+     *
+     * @param content
+     */
+    private void checkNotInList(Content content) {
+        if (nodes.containsKey(content)) {
+            throw new IllegalArgumentException("The content " + content.getHref() + " is already in the list");
+        }
+    }
+
+    /**
+     * Moves a node before another node
+     *
+     * @param node
+     * @param before
+     */
+    private void move(Node node, Node before) {
+        if (node == before || node.next == before) {
+            return;
+        }
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        link(node, before);
+        changed();
+    }
+
+    private static void link(Node node, Node before) {
+        node.previous = before.previous;
+        node.next = before;
+        before.previous.next = node;
+        before.previous = node;
+    }
+
+    private void changed() {
+        modCount++;
+        positions = null;
+        viewsChanged();
+    }
+
+    /**
+     * Adds the key of a node to an index, a key already indexed is counted as
+     * a duplicate
+     *
+     * @param index
+     * @param key
+     * @param node
+     * @param href
+     */
+    private void addKey(Map<String, Node> index, String key, Node node, boolean href) {
+        if (key == null) {
+            return;
+        }
+        if (index.containsKey(key)) {
+            if (href) {
+                duplicateHrefs++;
+            } else {
+                duplicateIds++;
+            }
+        } else {
+            index.put(key, node);
+        }
+    }
+
+    /**
+     * Removes the key of a node from an index. If the node was the indexed
+     * one and there are duplicate keys the next node with the key is indexed
+     *
+     * @param index
+     * @param key
+     * @param node
+     * @param href
+     */
+    private void removeKey(Map<String, Node> index, String key, Node node, boolean href) {
+        if (key == null) {
+            return;
+        }
+        if (index.get(key) != node) {
+            decrementDuplicates(href);
+            return;
+        }
+        index.remove(key);
+        if ((href ? duplicateHrefs : duplicateIds) == 0) {
+            return;
+        }
+        for (Node other = header.next; other != header; other = other.next) {
+            if (other != node && key.equals(href ? other.content.getHref() : other.content.getId())) {
+                index.put(key, other);
+                decrementDuplicates(href);
+                return;
+            }
+        }
+    }
+
+    private void decrementDuplicates(boolean href) {
+        if (href) {
+            duplicateHrefs = Math.max(duplicateHrefs - 1, 0);
+        } else {
+            duplicateIds = Math.max(duplicateIds - 1, 0);
+        }
+    }
+
+    /**
+     * Collects the content matching a filter
+     *
+     * @param spine
+     * @param toc
+     * @param mediaType
+     * @return
+     */
+    private List<Content> filter(boolean spine, boolean toc, String mediaType) {
+        List<Content> items = new ArrayList<>();
+        for (Node node = header.next; node != header; node = node.next) {
+            Content content = node.content;
+            if ((!spine || content.isSpine()) && (!toc || content.isToc())
+                    && (mediaType == null || mediaType.equals(content.getMediaType()))) {
+                items.add(content);
+            }
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * A content object in the linked list
+     */
+    private static class Node {
+
+        private Content content;
+        private Node previous;
+        private Node next;
+
+        Node(Content content) {
+            this.content = content;
+        }
+    }
+
+    /**
+     * Iterates the linked nodes
+     */
+    private class NodeIterator implements Iterator<Content> {
+
+        private Node next = header.next;
+        private Node last;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return next != header;
+        }
+
+        @Override
+        public Content next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == header) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = next.next;
+            return last.content;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            unlink(last);
+            last = null;
+            expectedModCount = modCount;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The source of the bytes of a Content object. A source is only opened when
+ * the content is written to the EPUB, which allows large files to stay on disk
+ * until they are needed.
+ *
+ * @author OpenCollab
+ */
+public interface ContentSource {
+
+    /**
+     * Opens a new stream to the content. The caller must close the stream.
+     *
+     * @return the stream to read the content from
+     * @throws IOException if the source could not be opened
+     */
+    public InputStream openStream() throws IOException;
+
+    /**
+     * The size of the content in bytes
+     *
+     * @return the size or -1 if it is not known before the content is read
+     */
+    public long getSize();
+
+    /**
+     * Indicates whether openStream may be called more than once
+     *
+     * @return the repeatable flag
+     */
+    public boolean isRepeatable();
+
+}
@@ -21,22 +21,44 @@
 package coza.opencollab.epub.creator.model;
 
 import coza.opencollab.epub.creator.EpubConstants;
+import coza.opencollab.epub.creator.util.ContentDigest;
 import coza.opencollab.epub.creator.util.EpubWriter;
+import coza.opencollab.epub.creator.util.TextTemplate;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.text.MessageFormat;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import org.apache.commons.io.IOUtils;
 
 /**
  * Representation of an EPUB book
  *
+ * If a memory budget is set, content is spilled to temporary files once the
+ * byte array content in memory exceeds the budget. Close the book to delete
+ * the temporary files.
+ *
  * @author OpenCollab
  */
-public class EpubBook {
+public class EpubBook implements Closeable {
+
+    /**
+     * The parsed HTML wrapper used by addTextContent
+     */
+    private static final TextTemplate HTML_WRAPPER = TextTemplate.compile(EpubConstants.HTML_WRAPPER);
 
     /**
      * A list of the the content files, this includes the cover, HTML pages, CSS
@@ -64,10 +86,21 @@ public class EpubBook {
      * The author, this is set as the meta data dc:creator value
      */
     private String author;
+    /**
+     * The modification date set as the dcterms:modified meta data and as the
+     * time of the zip entries. The time of writing is used if this is null
+     */
+    private Date modified;
     /**
      * Unique content id that is incremental set on content with no id
      */
     private int contentId = 1;
+
+    /**
+     * The book id with the characters not allowed in a content id replaced,
+     * created when the first content id is generated
+     */
+    private String contentIdPrefix;
     /**
      * List of the links that must be added to the TOC, they can be nested
      */
@@ -77,14 +110,17 @@ public class EpubBook {
      */
     private List<Landmark> landmarks;
     /**
-     * Instance of the EpubWriter to write the book to file or stream
+     * Instance of the EpubWriter to write the book to file or stream. A
+     * writer is only created for the book if none has been set
      */
-    private final EpubWriter epubCreator;
+    private EpubWriter epubCreator;
 
     /**
-     * Unique set of href's used to make sure we do not add duplicates
+     * Unique set of href's used to make sure we do not add duplicates when
+     * the contents were set to a list that is not a ContentList. A ContentList
+     * indexes the hrefs itself and follows href changes of its content
      */
-    private final Set uniqueHrefs;
+    private final Set<String> uniqueHrefs;
 
     /**
      * The href can not be repeated in the OPF, thus is we want to add the same
@@ -93,14 +129,59 @@ public class EpubBook {
      */
     private int hrefUniquePostfix = 1;
 
+    /**
+     * Indicates whether byte identical content must share one source, so the
+     * payload is kept in memory and compressed only once
+     */
+    private boolean deduplicateContent;
+
+    /**
+     * The hrefs of the byte array content by the hash of their bytes, used to
+     * find duplicate content. Only the href is kept, so the payload of content
+     * that has been removed or written by an EpubStreamWriter is not held
+     */
+    private final Map<ByteBuffer, String> contentDigests = new HashMap<>();
+
+    /**
+     * The number of content objects sharing a duplicate source, sources used
+     * by only one content object are not in the map
+     */
+    private final Map<ContentSource, Integer> sharedSources = new IdentityHashMap<>();
+
+    /**
+     * The maximum number of content bytes kept in memory, -1 for no limit
+     */
+    private long memoryBudget = -1;
+
+    /**
+     * The number of content bytes kept in memory
+     */
+    private long memoryUsed;
+
+    /**
+     * The directory of the spill files, the default temporary directory is
+     * used if this is null
+     */
+    private Path spillDirectory;
+
+    /**
+     * The temporary files holding the spilled content
+     */
+    private final List<Path> spillFiles = new ArrayList<>();
+
+    /**
+     * Indicates whether the book is checking the source of content, source
+     * changes made by the check are not reported back to the book
+     */
+    private boolean checkingSource;
+
     /**
      * Constructs EPUBBook
      */
     public EpubBook() {
-        this.epubCreator = new EpubWriter();
-        this.contents = new ArrayList<>();
+        this.contents = ownContentList(new ContentList());
         this.tocLinks = new ArrayList<>();
-        this.uniqueHrefs = new HashSet();
+        this.uniqueHrefs = new HashSet<>();
     }
 
     /**
@@ -126,10 +207,7 @@ public class EpubBook {
      * @param content
      */
     private void checkHref(Content content) {
-        content.setHref(removeLeadingFileSeparator(content.getHref()));
-        if (uniqueHrefs.contains(content.getHref())) {
-            content.setHref(incrementHref(content.getHref()));
-        }
+        content.setHref(checkHref(content.getHref()));
         uniqueHrefs.add(content.getHref());
     }
 
@@ -140,10 +218,24 @@ public class EpubBook {
      */
     private String checkHref(String href) {
         href = removeLeadingFileSeparator(href);
-        if (uniqueHrefs.contains(href)) {
-            return incrementHref(href);
+        String unique = href;
+        while (isHrefUsed(unique)) {
+            unique = incrementHref(href);
         }
-        return href;
+        return unique;
+    }
+
+    /**
+     * Indicates whether content in the book has the href
+     *
+     * @param href
+     * @return
+     */
+    private boolean isHrefUsed(String href) {
+        if (contents instanceof ContentList) {
+            return ((ContentList) contents).getByHref(href) != null;
+        }
+        return uniqueHrefs.contains(href);
     }
 
     /**
@@ -182,6 +274,7 @@ public class EpubBook {
     public boolean addContent(Content content) {
         checkContentId(content);
         checkHref(content);
+        checkSource(content);
         contents.add(content);
         return true;
     }
@@ -196,10 +289,142 @@ public class EpubBook {
     public boolean insertContent(Content content, int index) {
         checkContentId(content);
         checkHref(content);
+        checkSource(content);
         contents.add(index, content);
         return true;
     }
 
+    /**
+     * Returns the content with the href
+     *
+     * @param href the href of the content
+     * @return the content or null if the book has no content with the href
+     */
+    public Content getContentByHref(String href) {
+        return contentList().getByHref(href);
+    }
+
+    /**
+     * Returns the content with the id
+     *
+     * @param id the id of the content
+     * @return the content or null if the book has no content with the id
+     */
+    public Content getContentById(String id) {
+        return contentList().getById(id);
+    }
+
+    /**
+     * Removes the content with the href, the href can then be used again
+     *
+     * @param href the href of the content
+     * @return the content removed or null if the book has no content with the
+     * href
+     */
+    public Content removeContent(String href) {
+        Content removed = contentList().removeByHref(href);
+        if (removed != null) {
+            uniqueHrefs.remove(href);
+            releaseSource(removed.getSource());
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces the content with the href. The new content takes the position
+     * and the href of the replaced content, the memory used by the replaced
+     * content is released
+     *
+     * @param href the href of the content to replace
+     * @param content the new content
+     * @return the content replaced
+     * @throws java.util.NoSuchElementException if the book has no content
+     * with the href
+     */
+    public Content replaceContent(String href, Content content) {
+        checkContentId(content);
+        content.setHref(href);
+        checkSource(content);
+        Content replaced = contentList().replace(href, content);
+        if (replaced != content) {
+            releaseSource(replaced.getSource());
+        }
+        return replaced;
+    }
+
+    /**
+     * Moves the content with the href before other content
+     *
+     * @param href the href of the content to move
+     * @param beforeHref the href of the content to move before
+     * @throws java.util.NoSuchElementException if the book has no content
+     * with one of the hrefs
+     */
+    public void moveContentBefore(String href, String beforeHref) {
+        contentList().moveBefore(href, beforeHref);
+    }
+
+    /**
+     * Moves the content with the href after other content
+     *
+     * @param href the href of the content to move
+     * @param afterHref the href of the content to move after
+     * @throws java.util.NoSuchElementException if the book has no content
+     * with one of the hrefs
+     */
+    public void moveContentAfter(String href, String afterHref) {
+        contentList().moveAfter(href, afterHref);
+    }
+
+    /**
+     * @return the content in the spine in order
+     */
+    public List<Content> getSpineContents() {
+        return contentList().getSpineItems();
+    }
+
+    /**
+     * @return the content in the TOC in order
+     */
+    public List<Content> getTocContents() {
+        return contentList().getTocItems();
+    }
+
+    /**
+     * Returns the content with a media type
+     *
+     * @param mediaType the media type
+     * @return the content with the media type in order
+     */
+    public List<Content> getContentsByMediaType(String mediaType) {
+        return contentList().getByMediaType(mediaType);
+    }
+
+    /**
+     * Returns the contents as an indexed ContentList, a list set with
+     * setContents is copied into one the first time
+     *
+     * @return the content list backing this book
+     */
+    private ContentList contentList() {
+        if (!(contents instanceof ContentList)) {
+            contents = ownContentList(new ContentList(contents));
+        }
+        return (ContentList) contents;
+    }
+
+    /**
+     * Makes a ContentList the contents of this book, so the book is told
+     * when the source of its content changes
+     *
+     * @param list the list
+     * @return the list
+     */
+    private ContentList ownContentList(ContentList list) {
+        list.book = this;
+        return list;
+    }
+
     /**
      * Wraps a String in the HTML wrapper and adds create a content object that
      * is added to the content list. Returns null if the href is not unique
@@ -210,9 +435,41 @@ public class EpubBook {
      * @return the Content object generated from the text
      */
     public Content addTextContent(String title, String href, String content) {
+        return addTextContent(HTML_WRAPPER, href, title, content);
+    }
+
+    /**
+     * Fills in a template and adds the UTF-8 encoded result as XHTML content
+     * to the book. Parse the template once with TextTemplate.compile and use
+     * it for all the pages
+     *
+     * @param template the XHTML template
+     * @param href used as unique link
+     * @param values the values of the template placeholders
+     * @return a reference to the newly created Content object
+     */
+    public Content addTextContent(TextTemplate template, String href, CharSequence... values) {
         href = checkHref(href);
-        String contentString = MessageFormat.format(EpubConstants.HTML_WRAPPER, title, content);
-        Content textContent = new Content("application/xhtml+xml", href, contentString.getBytes());
+        Content textContent = new Content("application/xhtml+xml", href, template.encode(values));
+        addContent(textContent);
+        return textContent;
+    }
+
+    /**
+     * Wraps the text of a Reader in the HTML wrapper and adds it as content to
+     * the book. The Reader is not closed
+     *
+     * @param title the title of the page
+     * @param href used as unique link
+     * @param content the HTML body content
+     * @return a reference to the newly created Content object
+     * @throws IOException if the Reader could not be read
+     */
+    public Content addTextContent(String title, String href, Reader content) throws IOException {
+        href = checkHref(href);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HTML_WRAPPER.write(out, title, content);
+        Content textContent = new Content("application/xhtml+xml", href, out.toByteArray());
         addContent(textContent);
         return textContent;
     }
@@ -248,13 +505,64 @@ public class EpubBook {
      * byte[]
      */
     public Content addContent(InputStream contents, String mediaType, String href, boolean toc, boolean spine) throws IOException {
-        Content content = new Content(mediaType, href, contents);
+        Content content = memoryBudget < 0
+                ? new Content(mediaType, href, contents)
+                : new Content(mediaType, href, readWithinBudget(contents));
+        content.setToc(toc);
+        content.setSpine(spine);
+        addContent(content);
+        return content;
+    }
+
+    /**
+     * Creates and adds lazily read Content to the book. The source is only
+     * opened when the book is written
+     *
+     * @param source the source of the content
+     * @param mediaType the mime type
+     * @param href used as unique link
+     * @param toc flag whether it must be added to the TOC
+     * @param spine flag whether it must be added to the spine
+     * @return a reference to the newly created Content object
+     */
+    public Content addContent(ContentSource source, String mediaType, String href, boolean toc, boolean spine) {
+        Content content = new Content(mediaType, href, source);
         content.setToc(toc);
         content.setSpine(spine);
         addContent(content);
         return content;
     }
 
+    /**
+     * Creates and adds a file to the book. The file is only read when the book
+     * is written
+     *
+     * @param file the path of the file
+     * @param mediaType the mime type
+     * @param href used as unique link
+     * @param toc flag whether it must be added to the TOC
+     * @param spine flag whether it must be added to the spine
+     * @return a reference to the newly created Content object
+     */
+    public Content addContent(Path file, String mediaType, String href, boolean toc, boolean spine) {
+        return addContent(new FileContentSource(file), mediaType, href, toc, spine);
+    }
+
+    /**
+     * Creates and adds Content held in a ByteBuffer to the book. Use a direct
+     * or memory-mapped buffer to keep large payloads off the Java heap
+     *
+     * @param buffer the content between the position and limit of the buffer
+     * @param mediaType the mime type
+     * @param href used as unique link
+     * @param toc flag whether it must be added to the TOC
+     * @param spine flag whether it must be added to the spine
+     * @return a reference to the newly created Content object
+     */
+    public Content addContent(ByteBuffer buffer, String mediaType, String href, boolean toc, boolean spine) {
+        return addContent(new ByteBufferContentSource(buffer), mediaType, href, toc, spine);
+    }
+
     /**
      * Checks if Content object has an id and adds an unique if not
      *
@@ -262,7 +570,200 @@ public class EpubBook {
      */
     private void checkContentId(Content content) {
         if (content.getId() == null) {
-            content.setId(id.replaceAll("[^a-zA-Z0-9\\-]", "_") + "_" + (contentId++));
+            if (contentIdPrefix == null) {
+                contentIdPrefix = id.replaceAll("[^a-zA-Z0-9\\-]", "_") + "_";
+            }
+            content.setId(contentIdPrefix + (contentId++));
+        }
+    }
+
+    /**
+     * Checks the byte array content of a content object. The source is
+     * replaced with the source of byte identical content already in the book
+     * and content that does not fit the memory budget is spilled to a file.
+     * Lazy sources are not read when they are added
+     *
+     * @param content the content to check
+     */
+    private void checkSource(Content content) {
+        if (!(content.getSource() instanceof ByteArrayContentSource)) {
+            return;
+        }
+        checkingSource = true;
+        try {
+            checkBytes(content);
+        } finally {
+            checkingSource = false;
+        }
+    }
+
+    /**
+     * Deduplicates, spills or counts the byte array content of a content
+     * object
+     *
+     * @param content the content with a byte array source
+     */
+    private void checkBytes(Content content) {
+        byte[] bytes = ((ByteArrayContentSource) content.getSource()).getBytes();
+        ByteBuffer digest = null;
+        if (deduplicateContent) {
+            digest = ByteBuffer.wrap(ContentDigest.digest(bytes));
+            ContentSource existing = findDuplicate(digest, bytes);
+            if (existing != null) {
+                Integer users = sharedSources.get(existing);
+                sharedSources.put(existing, users == null ? 2 : users + 1);
+                content.setSource(existing);
+                return;
+            }
+        }
+        if (memoryBudget >= 0) {
+            if (memoryUsed + bytes.length > memoryBudget) {
+                try {
+                    content.setSource(spill(bytes, null));
+                } catch (IOException ex) {
+                    throw new IllegalStateException("Could not spill the content of " + content.getHref(), ex);
+                }
+            } else {
+                memoryUsed += bytes.length;
+            }
+        }
+        if (digest != null) {
+            contentDigests.put(digest, content.getHref());
+        }
+    }
+
+    /**
+     * Finds the source of content in the book with the same bytes
+     *
+     * @param digest the hash of the bytes
+     * @param bytes the bytes
+     * @return the source or null if the book has no content with the bytes
+     */
+    private ContentSource findDuplicate(ByteBuffer digest, byte[] bytes) {
+        String href = contentDigests.get(digest);
+        Content existing = href == null ? null : getContentByHref(href);
+        if (existing == null || existing.getSource() == null) {
+            return null;
+        }
+        ContentSource source = existing.getSource();
+        if (source instanceof ByteArrayContentSource) {
+            return Arrays.equals(bytes, ((ByteArrayContentSource) source).getBytes()) ? source : null;
+        }
+        if (!source.isRepeatable() || source.getSize() != bytes.length) {
+            return null;
+        }
+        try {
+            return Arrays.equals(digest.array(), ContentDigest.digest(source)) ? source : null;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Called by the content list when the source of content in the book is
+     * replaced. The old source is released and the new one is checked like
+     * the source of added content
+     *
+     * @param content the content
+     * @param oldSource the source replaced
+     */
+    void sourceChanged(Content content, ContentSource oldSource) {
+        if (checkingSource || oldSource == content.getSource()) {
+            return;
+        }
+        if (deduplicateContent && oldSource instanceof ByteArrayContentSource) {
+            ByteBuffer digest = ByteBuffer.wrap(ContentDigest.digest(((ByteArrayContentSource) oldSource).getBytes()));
+            if (content.getHref() != null && content.getHref().equals(contentDigests.get(digest))) {
+                contentDigests.remove(digest);
+            }
+        }
+        releaseSource(oldSource);
+        checkSource(content);
+    }
+
+    /**
+     * Releases the source of content removed from the book. In memory content
+     * is no longer counted against the budget unless other content still
+     * shares the source
+     *
+     * @param source the source of the content removed
+     */
+    private void releaseSource(ContentSource source) {
+        Integer users = sharedSources.remove(source);
+        if (users != null) {
+            if (users > 2) {
+                sharedSources.put(source, users - 1);
+            }
+            return;
+        }
+        if (memoryBudget >= 0 && source instanceof ByteArrayContentSource) {
+            memoryUsed = Math.max(memoryUsed - ((ByteArrayContentSource) source).getBytes().length, 0);
+        }
+    }
+
+    /**
+     * Reads a stream into memory if it fits the memory budget, otherwise the
+     * stream is spilled to a file without reading all of it into memory
+     *
+     * @param in the stream to read, it is not closed
+     * @return the source of the content
+     * @throws IOException if the stream could not be read or spilled
+     */
+    private ContentSource readWithinBudget(InputStream in) throws IOException {
+        long available = Math.max(memoryBudget - memoryUsed, 0);
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+            if (memory.size() + length > available) {
+                memory.write(buffer, 0, length);
+                return spill(memory.toByteArray(), in);
+            }
+            memory.write(buffer, 0, length);
+        }
+        return new ByteArrayContentSource(memory.toByteArray());
+    }
+
+    /**
+     * Writes content to a new spill file
+     *
+     * @param bytes the content read so far
+     * @param rest the rest of the content or null
+     * @return the source of the spill file
+     * @throws IOException
+     */
+    private ContentSource spill(byte[] bytes, InputStream rest) throws IOException {
+        Path file = spillDirectory == null
+                ? Files.createTempFile("epub-", ".spill")
+                : Files.createTempFile(spillDirectory, "epub-", ".spill");
+        spillFiles.add(file);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(bytes);
+            if (rest != null) {
+                IOUtils.copy(rest, out);
+            }
+        }
+        return new FileContentSource(file);
+    }
+
+    /**
+     * Deletes the spill files. The spilled content can not be written
+     * afterwards
+     *
+     * @throws IOException if a spill file could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Path file : spillFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        spillFiles.clear();
+        if (failure != null) {
+            throw failure;
         }
     }
 
@@ -287,7 +788,7 @@ public class EpubBook {
      * @throws Exception if the content can not be zipped and written
      */
     public void writeToStream(OutputStream out) throws Exception {
-        epubCreator.writeEpubToStream(this, out);
+        getEpubCreator().writeEpubToStream(this, out);
     }
 
     /**
@@ -297,10 +798,13 @@ public class EpubBook {
      * @throws Exception if the content can not be zipped and stored
      */
     public void writeToFile(String fileName) throws Exception {
-        epubCreator.writeEpubToFile(this, fileName);
+        getEpubCreator().writeEpubToFile(this, fileName);
     }
 
     /**
+     * Returns the contents in order. The list is a ContentList indexed by href
+     * and id unless a different list was set with setContents
+     *
      * @return the contents
      */
     public List<Content> getContents() {
@@ -311,7 +815,14 @@ public class EpubBook {
      * @param contents the content to set
      */
     public void setContents(List<Content> contents) {
+        if (contents instanceof ContentList) {
+            ownContentList((ContentList) contents);
+        }
         this.contents = contents;
+        uniqueHrefs.clear();
+        for (Content content : contents) {
+            uniqueHrefs.add(content.getHref());
+        }
     }
 
     /**
@@ -354,6 +865,7 @@ public class EpubBook {
      */
     public void setId(String id) {
         this.id = id;
+        this.contentIdPrefix = null;
     }
 
     /**
@@ -413,16 +925,127 @@ public class EpubBook {
     }
 
     /**
+     * @return the modified date
+     */
+    public Date getModified() {
+        return modified;
+    }
+
+    /**
+     * @param modified the modified date to set
+     */
+    public void setModified(Date modified) {
+        this.modified = modified;
+    }
+
+    /**
+     * Creates a copy of the book meta data with a different list of contents.
+     * The EpubWriter uses this to add the navigation document without
+     * changing the book. The Content objects themselves are shared, the TOC
+     * links and landmarks lists are copied
+     *
+     * @param contents the contents of the copy
+     * @return the copy of the book
+     */
+    public EpubBook copyWithContents(List<Content> contents) {
+        EpubBook copy = new EpubBook(language, id, title, author);
+        copy.contents = contents;
+        copy.autoToc = autoToc;
+        copy.tocLinks = tocLinks == null ? null : new ArrayList<>(tocLinks);
+        copy.landmarks = landmarks == null ? null : new ArrayList<>(landmarks);
+        copy.modified = modified;
+        copy.epubCreator = epubCreator;
+        return copy;
+    }
+
+    /**
+     * Returns the writer used by writeToStream and writeToFile. If no writer
+     * has been set a new one is created for this book
+     *
      * @return the epubCreator
      */
     public EpubWriter getEpubCreator() {
+        if (epubCreator == null) {
+            epubCreator = new EpubWriter();
+        }
         return epubCreator;
     }
 
     /**
-     * @return the uniqueHrefs
+     * Sets the writer used by writeToStream and writeToFile. A single frozen
+     * EpubWriter can be shared by all books
+     *
+     * @param epubCreator the epubCreator to set
+     */
+    public void setEpubCreator(EpubWriter epubCreator) {
+        this.epubCreator = epubCreator;
+    }
+
+    /**
+     * @return the deduplicateContent
      */
-    public Set getUniqueHrefs() {
+    public boolean isDeduplicateContent() {
+        return deduplicateContent;
+    }
+
+    /**
+     * Sets whether byte identical content added to the book must share one
+     * source. The EpubWriter then compresses the shared content only once.
+     * This only applies to content added after it is set
+     *
+     * @param deduplicateContent the deduplicateContent to set
+     */
+    public void setDeduplicateContent(boolean deduplicateContent) {
+        this.deduplicateContent = deduplicateContent;
+    }
+
+    /**
+     * @return the memoryBudget
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the maximum number of content bytes kept in memory. Content added
+     * afterwards that does not fit is spilled to a temporary file, -1 keeps
+     * all the content in memory
+     *
+     * @param memoryBudget the memoryBudget to set
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return the number of content bytes kept in memory
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * @return the spillDirectory
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory the spillDirectory to set
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return the uniqueHrefs, for a ContentList this is a view of the hrefs
+     * in the list
+     */
+    public Set<String> getUniqueHrefs() {
+        if (contents instanceof ContentList) {
+            return ((ContentList) contents).getHrefs();
+        }
         return uniqueHrefs;
     }
 
@@ -0,0 +1,202 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The data of a zip entry that has already been compressed, along with the
+ * CRC and sizes needed to write the entry headers. Instances are immutable,
+ * the data is only handed out as a copy or a read-only view.
+ *
+ * @author OpenCollab
+ */
+public class CompressedEntry {
+
+    /**
+     * The zip method, ZipEntry.STORED or ZipEntry.DEFLATED
+     */
+    private final int method;
+
+    /**
+     * The CRC32 of the uncompressed data
+     */
+    private final long crc;
+
+    /**
+     * The size of the uncompressed data
+     */
+    private final long size;
+
+    /**
+     * The compressed data
+     */
+    private final byte[] data;
+
+    /**
+     * Creates new instance of CompressedEntry
+     *
+     * @param method the zip method, ZipEntry.STORED or ZipEntry.DEFLATED
+     * @param crc the CRC32 of the uncompressed data
+     * @param size the size of the uncompressed data
+     * @param data the compressed data, it is not copied and must not be
+     * changed afterwards
+     */
+    public CompressedEntry(int method, long crc, long size, byte[] data) {
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.data = data;
+    }
+
+    /**
+     * Deflates all the data of the stream into a new CompressedEntry
+     *
+     * @param in the stream to read the uncompressed data from
+     * @param level the deflate level
+     * @return the deflated entry
+     * @throws IOException if the stream could not be read
+     */
+    public static CompressedEntry deflate(InputStream in, int level) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeflatingOutputStream deflater = new DeflatingOutputStream(out, level);
+        try {
+            IOUtils.copy(in, deflater);
+        } finally {
+            deflater.finish();
+        }
+        return new CompressedEntry(ZipEntry.DEFLATED, deflater.getCrc(), deflater.getSize(), out.toByteArray());
+    }
+
+    /**
+     * Creates a STORED entry for the data
+     *
+     * @param data the uncompressed data
+     * @return the stored entry
+     */
+    public static CompressedEntry store(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return new CompressedEntry(ZipEntry.STORED, crc.getValue(), data.length, data);
+    }
+
+    /**
+     * Checks the data against the CRC and size, deflated data is inflated to
+     * do so
+     *
+     * @return true if the data matches the CRC and size
+     */
+    public boolean verify() {
+        CRC32 check = new CRC32();
+        long total = 0;
+        if (method == ZipEntry.STORED) {
+            check.update(data);
+            total = data.length;
+        } else {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                byte[] buffer = new byte[8192];
+                boolean padded = false;
+                while (!inflater.finished()) {
+                    int length = inflater.inflate(buffer);
+                    if (length == 0 && inflater.needsInput()) {
+                        if (padded) {
+                            return false;
+                        }
+                        inflater.setInput(new byte[1]);
+                        padded = true;
+                    } else if (length == 0 && inflater.needsDictionary()) {
+                        return false;
+                    }
+                    check.update(buffer, 0, length);
+                    total += length;
+                }
+            } catch (DataFormatException ex) {
+                return false;
+            } finally {
+                inflater.end();
+            }
+        }
+        return total == size && check.getValue() == crc;
+    }
+
+    /**
+     * @return the method
+     */
+    public int getMethod() {
+        return method;
+    }
+
+    /**
+     * @return the CRC
+     */
+    public long getCrc() {
+        return crc;
+    }
+
+    /**
+     * @return the size
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the compressed size
+     */
+    public long getCompressedSize() {
+        return data.length;
+    }
+
+    /**
+     * @return a copy of the compressed data
+     */
+    public byte[] getData() {
+        return data.clone();
+    }
+
+    /**
+     * @return a read-only view of the compressed data
+     */
+    public ByteBuffer getBuffer() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the compressed data without copying it, for the ZipWriter and
+     * the content entries that only read it
+     *
+     * @return the compressed data
+     */
+    byte[] data() {
+        return data;
+    }
+
+}
@@ -0,0 +1,96 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.ByteArrayContentSource;
+import coza.opencollab.epub.creator.model.ContentSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates the SHA-256 hash of content, used to find identical content
+ * within a book and between books
+ *
+ * @author OpenCollab
+ */
+public final class ContentDigest {
+
+    private ContentDigest() {
+    }
+
+    /**
+     * Calculates the hash of a byte array
+     *
+     * @param content the content
+     * @return the SHA-256 hash
+     */
+    public static byte[] digest(byte[] content) {
+        MessageDigest digest = newDigest();
+        digest.update(content);
+        return digest.digest();
+    }
+
+    /**
+     * Calculates the hash of the content of a source. The source is read
+     * completely unless it is backed by a byte array
+     *
+     * @param source the content source
+     * @return the SHA-256 hash
+     * @throws IOException if the source could not be read
+     */
+    public static byte[] digest(ContentSource source) throws IOException {
+        if (source instanceof ByteArrayContentSource) {
+            return digest(((ByteArrayContentSource) source).getBytes());
+        }
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = source.openStream()) {
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Converts a hash to lower case hexadecimal
+     *
+     * @param digest the hash
+     * @return the hexadecimal string
+     */
+    public static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+}
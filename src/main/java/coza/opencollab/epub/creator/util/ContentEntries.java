@@ -0,0 +1,532 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.ByteArrayContentSource;
+import coza.opencollab.epub.creator.model.ByteBufferContentSource;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.FileContentSource;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes the zip entries of a list of content objects, one step at a time.
+ * A step writes a whole entry, or a chunk of an entry that is deflated while
+ * it is streamed. The EpubWriter, the EpubStreamWriter and the channel
+ * returned by EpubWriter.openEpubChannel all write their content with this
+ * class, so the compression policy, the compressed entry cache, the executor,
+ * shared sources and unchanged entries of a previous EPUB are handled the
+ * same way for all of them.
+ *
+ * Content objects that share the same source, like the duplicates found by
+ * the book, are compressed once and the compressed data is written for each
+ * of them. With an executor the entries are deflated in parallel and written
+ * in order as they complete, the output is the same as that of the
+ * sequential path.
+ *
+ * @author OpenCollab
+ */
+final class ContentEntries implements Closeable {
+
+    /**
+     * The size of the chunks streamed per step, the same as IOUtils.copy uses
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final EpubWriter writer;
+
+    private final ZipWriter zip;
+
+    /**
+     * The previous EPUB to copy unchanged entries from, may be null
+     */
+    private final ZipIndex previous;
+
+    /**
+     * Indicates whether STORED content and compressed entries are written in
+     * chunks as well, so a step never writes more than a chunk of an entry
+     */
+    private final boolean incremental;
+
+    private final Iterator<Content> contents;
+
+    private final Map<ContentSource, SharedEntry> shared;
+
+    private final Executor executor;
+
+    private final int maxPendingEntries;
+
+    /**
+     * The Deflater caches of the compression tasks on the executor, the pool
+     * of the batch job running the write or one of this write only. Null
+     * without an executor
+     */
+    private final DeflateResources.Pool deflatePool;
+
+    /**
+     * Indicates whether the pool is ended when the entries are closed
+     */
+    private final boolean ownDeflatePool;
+
+    /**
+     * The entries being compressed on the executor, in order
+     */
+    private final Deque<PendingEntry> pending = new ArrayDeque<>();
+
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    /**
+     * The source of the entry currently being streamed
+     */
+    private InputStream in;
+
+    /**
+     * The stream of the entry currently being streamed
+     */
+    private OutputStream out;
+
+    private String entryName;
+
+    private String entryMediaType;
+
+    private long entryStart;
+
+    /**
+     * Creates new instance of ContentEntries
+     *
+     * @param writer the writer configuration to use
+     * @param zip the zip to write the entries to
+     * @param contents the content objects in order
+     * @param previous the previous EPUB to copy unchanged entries from, may
+     * be null
+     * @param incremental true to write STORED content and compressed entries
+     * in chunks as well
+     */
+    ContentEntries(EpubWriter writer, ZipWriter zip, List<Content> contents, ZipIndex previous, boolean incremental) {
+        this.writer = writer;
+        this.zip = zip;
+        this.previous = previous;
+        this.incremental = incremental;
+        this.contents = contents.iterator();
+        this.shared = findSharedSources(contents);
+        this.executor = writer.getExecutor();
+        this.maxPendingEntries = Math.max(writer.getMaxPendingEntries(), 1);
+        DeflateResources.Pool current = DeflateResources.Pool.current();
+        this.ownDeflatePool = executor != null && current == null;
+        this.deflatePool = executor == null ? null : ownDeflatePool ? new DeflateResources.Pool() : current;
+    }
+
+    /**
+     * Writes all the entries
+     *
+     * @throws IOException if an entry could not be written
+     */
+    void writeAll() throws IOException {
+        while (step()) {
+        }
+    }
+
+    /**
+     * Writes the next entry or the next chunk of the current entry
+     *
+     * @return false if all the entries have been written
+     * @throws IOException if the entry could not be written
+     */
+    boolean step() throws IOException {
+        if (in != null) {
+            int length = in.read(chunk);
+            if (length == -1) {
+                closeEntry();
+            } else {
+                out.write(chunk, 0, length);
+            }
+            return true;
+        }
+        if (executor != null) {
+            while (contents.hasNext() && pending.size() <= maxPendingEntries) {
+                submit(contents.next());
+            }
+            if (pending.isEmpty()) {
+                return false;
+            }
+            writePendingEntry(pending.poll());
+            return true;
+        }
+        if (!contents.hasNext()) {
+            return false;
+        }
+        openEntry(contents.next());
+        return true;
+    }
+
+    /**
+     * Stops writing, the source of the current entry is closed, pending
+     * compressions are cancelled and the Deflaters of a pool of this write
+     * are ended. The zip is not closed
+     *
+     * @throws IOException if the current source could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        for (PendingEntry entry : pending) {
+            if (entry.compressed != null) {
+                entry.compressed.cancel(true);
+            }
+        }
+        pending.clear();
+        if (ownDeflatePool) {
+            deflatePool.end();
+        }
+        if (in != null) {
+            InputStream current = in;
+            in = null;
+            out = null;
+            current.close();
+        }
+    }
+
+    /**
+     * Writes the entry of a content object, or starts streaming it
+     *
+     * @param content
+     * @throws IOException
+     */
+    private void openEntry(Content content) throws IOException {
+        String fileName = writer.getContentFolder() + "/" + content.getHref();
+        ContentSource source = content.getSource();
+        int level = writer.getCompressionPolicy().getCompressionLevel(content);
+        long start = writer.entryStarted(zip, fileName, content.getMediaType());
+        ZipIndex.Entry unchanged = findUnchanged(fileName, source, level);
+        if (unchanged != null) {
+            copyEntry(fileName, unchanged);
+        } else if (level == Deflater.NO_COMPRESSION && source.isRepeatable()) {
+            if (incremental) {
+                CRC32 crc = new CRC32();
+                long size = EpubWriter.updateCrc(source, crc);
+                startStreaming(fileName, content.getMediaType(), start, source.openStream());
+                out = zip.openStoredEntry(fileName, size, crc.getValue());
+                return;
+            }
+            addStoredContent(fileName, source);
+        } else if (shared.containsKey(source)) {
+            SharedEntry sharedEntry = shared.get(source);
+            if (sharedEntry == null || sharedEntry.level != level) {
+                sharedEntry = new SharedEntry(level, compressTask(source, level));
+                sharedEntry.compressed.run();
+                shared.put(source, sharedEntry);
+            }
+            if (writeCompressed(fileName, content.getMediaType(), start, getCompressed(fileName, sharedEntry.compressed))) {
+                return;
+            }
+        } else if (EpubWriter.isCacheable(writer.getCompressedEntryCache(), source)) {
+            if (writeCompressed(fileName, content.getMediaType(), start, writer.compress(source, level))) {
+                return;
+            }
+        } else {
+            startStreaming(fileName, content.getMediaType(), start, source.openStream());
+            out = zip.openDeflatedEntry(fileName, level);
+            return;
+        }
+        writer.entryWritten(zip, fileName, content.getMediaType(), start);
+    }
+
+    /**
+     * Keeps the data of an entry that is streamed in chunks
+     *
+     * @param fileName
+     * @param mediaType
+     * @param start
+     * @param data
+     */
+    private void startStreaming(String fileName, String mediaType, long start, InputStream data) {
+        entryName = fileName;
+        entryMediaType = mediaType;
+        entryStart = start;
+        in = data;
+    }
+
+    /**
+     * Writes an entry that has already been compressed. When incremental the
+     * compressed data is streamed in chunks like the other entries, so a
+     * step never writes more than a chunk
+     *
+     * @param fileName
+     * @param mediaType
+     * @param start
+     * @param entry
+     * @return true if the entry is streamed and finished by later steps
+     * @throws IOException
+     */
+    private boolean writeCompressed(String fileName, String mediaType, long start, CompressedEntry entry) throws IOException {
+        if (!incremental) {
+            zip.writeCompressedEntry(fileName, entry);
+            return false;
+        }
+        startStreaming(fileName, mediaType, start, new ByteArrayInputStream(entry.data()));
+        out = zip.openCompressedEntry(fileName, entry);
+        return true;
+    }
+
+    /**
+     * Finishes the entry being streamed
+     *
+     * @throws IOException
+     */
+    private void closeEntry() throws IOException {
+        try {
+            in.close();
+        } finally {
+            in = null;
+            out.close();
+            out = null;
+        }
+        writer.entryWritten(zip, entryName, entryMediaType, entryStart);
+    }
+
+    /**
+     * Finds the sources used by more than one content object
+     *
+     * @param contents
+     * @return a map with the shared sources as keys and null values
+     */
+    private static Map<ContentSource, SharedEntry> findSharedSources(List<Content> contents) {
+        Map<ContentSource, SharedEntry> shared = new IdentityHashMap<>();
+        Set<ContentSource> seen = Collections.newSetFromMap(new IdentityHashMap<ContentSource, Boolean>());
+        for (Content content : contents) {
+            if (!seen.add(content.getSource())) {
+                shared.put(content.getSource(), null);
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Starts compressing the entry of a content object on the executor,
+     * STORED and unchanged entries are written when it is their turn
+     *
+     * @param content
+     * @throws IOException
+     */
+    private void submit(Content content) throws IOException {
+        ContentSource source = content.getSource();
+        int level = writer.getCompressionPolicy().getCompressionLevel(content);
+        PendingEntry entry = new PendingEntry(writer.getContentFolder() + "/" + content.getHref(), content.getMediaType(), source);
+        entry.unchanged = findUnchanged(entry.fileName, source, level);
+        if (entry.unchanged == null && (level != Deflater.NO_COMPRESSION || !source.isRepeatable())) {
+            SharedEntry sharedEntry = shared.get(source);
+            if (sharedEntry != null && sharedEntry.level == level) {
+                entry.compressed = sharedEntry.compressed;
+            } else {
+                entry.compressed = compressTask(source, level);
+                executor.execute(entry.compressed);
+                if (shared.containsKey(source)) {
+                    shared.put(source, new SharedEntry(level, entry.compressed));
+                }
+            }
+        }
+        pending.add(entry);
+    }
+
+    /**
+     * Creates the task that compresses the content of a source
+     *
+     * @param source
+     * @param level
+     * @return
+     */
+    private FutureTask<CompressedEntry> compressTask(final ContentSource source, final int level) {
+        return new FutureTask<>(new Callable<CompressedEntry>() {
+            @Override
+            public CompressedEntry call() throws IOException {
+                boolean attached = deflatePool != null && deflatePool.attach();
+                try {
+                    return writer.compress(source, level);
+                } finally {
+                    if (attached) {
+                        deflatePool.detach();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a pending entry to be compressed and writes it
+     *
+     * @param entry
+     * @throws IOException
+     */
+    private void writePendingEntry(PendingEntry entry) throws IOException {
+        long start = writer.entryStarted(zip, entry.fileName, entry.mediaType);
+        if (entry.unchanged != null) {
+            copyEntry(entry.fileName, entry.unchanged);
+        } else if (entry.compressed == null) {
+            addStoredContent(entry.fileName, entry.source);
+        } else if (writeCompressed(entry.fileName, entry.mediaType, start, getCompressed(entry.fileName, entry.compressed))) {
+            return;
+        }
+        writer.entryWritten(zip, entry.fileName, entry.mediaType, start);
+    }
+
+    /**
+     * Waits for a compression task to complete
+     *
+     * @param fileName
+     * @param compressed
+     * @return
+     * @throws IOException
+     */
+    private CompressedEntry getCompressed(String fileName, FutureTask<CompressedEntry> compressed) throws IOException {
+        try {
+            return compressed.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing " + fileName);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Could not compress " + fileName, ex.getCause());
+        }
+    }
+
+    /**
+     * Finds the entry in the previous EPUB that can be copied for the
+     * content. The entry must have the same name, compression method, size
+     * and CRC. Sources that can only be read once are never copied.
+     *
+     * @param fileName
+     * @param source
+     * @param level
+     * @return the unchanged entry or null if the content must be written
+     * @throws IOException
+     */
+    private ZipIndex.Entry findUnchanged(String fileName, ContentSource source, int level) throws IOException {
+        if (previous == null || !source.isRepeatable()) {
+            return null;
+        }
+        ZipIndex.Entry entry = previous.getEntry(fileName);
+        int method = level == Deflater.NO_COMPRESSION ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        if (entry == null || entry.getMethod() != method
+                || (source.getSize() >= 0 && source.getSize() != entry.getSize())) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        long size = EpubWriter.updateCrc(source, crc);
+        return size == entry.getSize() && crc.getValue() == entry.getCrc() ? entry : null;
+    }
+
+    /**
+     * Copies an entry of the previous EPUB without inflating it
+     *
+     * @param fileName
+     * @param entry
+     * @throws IOException
+     */
+    private void copyEntry(String fileName, ZipIndex.Entry entry) throws IOException {
+        zip.writeRawEntry(fileName, entry.getMethod(), entry.getCrc(), entry.getSize(),
+                previous.getChannel(), previous.getDataOffset(entry), entry.getCompressedSize());
+    }
+
+    /**
+     * Adds content as a STORED zip entry. Files are transferred directly from
+     * their channel and buffers are written directly to the zip channel,
+     * other sources are read once to calculate the CRC and then again to
+     * write the data.
+     *
+     * @param fileName
+     * @param source
+     * @throws IOException
+     */
+    private void addStoredContent(String fileName, ContentSource source) throws IOException {
+        if (source instanceof FileContentSource) {
+            try (FileChannel file = FileChannel.open(((FileContentSource) source).getPath(), StandardOpenOption.READ)) {
+                zip.writeStoredEntry(fileName, file);
+            }
+        } else if (source instanceof ByteArrayContentSource) {
+            zip.writeStoredEntry(fileName, ((ByteArrayContentSource) source).getBytes());
+        } else if (source instanceof ByteBufferContentSource) {
+            zip.writeStoredEntry(fileName, ((ByteBufferContentSource) source).getBuffer());
+        } else {
+            CRC32 crc = new CRC32();
+            long size = EpubWriter.updateCrc(source, crc);
+            try (InputStream stream = source.openStream();
+                    OutputStream entry = zip.openStoredEntry(fileName, size, crc.getValue())) {
+                IOUtils.copy(stream, entry);
+            }
+        }
+    }
+
+    /**
+     * An entry waiting to be written while it is compressed on the executor
+     */
+    private static class PendingEntry {
+
+        private final String fileName;
+        private final String mediaType;
+        private final ContentSource source;
+        private FutureTask<CompressedEntry> compressed;
+        private ZipIndex.Entry unchanged;
+
+        PendingEntry(String fileName, String mediaType, ContentSource source) {
+            this.fileName = fileName;
+            this.mediaType = mediaType;
+            this.source = source;
+        }
+    }
+
+    /**
+     * The compression of a source used by more than one content object
+     */
+    private static class SharedEntry {
+
+        private final int level;
+        private final FutureTask<CompressedEntry> compressed;
+
+        SharedEntry(int level, FutureTask<CompressedEntry> compressed) {
+            this.level = level;
+            this.compressed = compressed;
+        }
+    }
+}
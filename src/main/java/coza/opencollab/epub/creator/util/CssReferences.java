@@ -0,0 +1,92 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the url() and @import references of CSS, used by the EpubValidator
+ * and the ResourceScanner
+ *
+ * @author OpenCollab
+ */
+final class CssReferences {
+
+    private static final Pattern REFERENCE = Pattern.compile(
+            "url\\(\\s*(['\"]?)([^'\")]*)\\1\\s*\\)|@import\\s+(['\"])([^'\"]*)\\3");
+
+    private CssReferences() {
+    }
+
+    /**
+     * Finds the references in a style sheet
+     *
+     * @param css the style sheet
+     * @return the references in the order they appear
+     */
+    static List<Reference> find(String css) {
+        List<Reference> references = new ArrayList<>();
+        Matcher matcher = REFERENCE.matcher(css);
+        int line = 1;
+        int position = 0;
+        while (matcher.find()) {
+            for (; position < matcher.start(); position++) {
+                if (css.charAt(position) == '\n') {
+                    line++;
+                }
+            }
+            String value = matcher.group(2) != null ? matcher.group(2) : matcher.group(4);
+            references.add(new Reference(value.trim(), line));
+        }
+        return references;
+    }
+
+    /**
+     * A reference and the line it is on
+     */
+    static final class Reference {
+
+        private final String value;
+        private final int line;
+
+        Reference(String value, int line) {
+            this.value = value;
+            this.line = line;
+        }
+
+        /**
+         * @return the reference as written, without quotes
+         */
+        String getValue() {
+            return value;
+        }
+
+        /**
+         * @return the line of the reference, starting at 1
+         */
+        int getLine() {
+            return line;
+        }
+    }
+}
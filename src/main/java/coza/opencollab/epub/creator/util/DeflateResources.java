@@ -0,0 +1,201 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.util.ArrayDeque;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * The Deflater, CRC32 and buffer needed to deflate one zip entry. While an
+ * EpubBatchWriter job runs its thread has a cache of these per deflate level,
+ * so a worker writing many books reuses the same native Deflater instead of
+ * allocating one for every entry. The executor threads compressing entries
+ * for an EpubWriter attach a cache of the same pool while a task runs, or of
+ * a pool of the write if it does not run in a batch. Other threads do not
+ * cache, their Deflaters are ended when the entry is done.
+ *
+ * @author OpenCollab
+ */
+final class DeflateResources {
+
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The maximum number of cached instances per thread and level, more than
+     * one is only needed when entries are deflated in a nested way
+     */
+    private static final int MAX_CACHED = 2;
+
+    /**
+     * The cache of the batch job running on the current thread, not set on
+     * other threads
+     */
+    private static final ThreadLocal<ArrayDeque<DeflateResources>[]> CACHE = new ThreadLocal<>();
+
+    /**
+     * The pool of the cache attached to the current thread
+     */
+    private static final ThreadLocal<Pool> POOL = new ThreadLocal<>();
+
+    final int level;
+
+    final Deflater deflater;
+
+    final CRC32 crc = new CRC32();
+
+    final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private DeflateResources(int level) {
+        this.level = level;
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Takes resources for the deflate level from the cache of the current
+     * thread, or creates new ones
+     *
+     * @param level the deflate level
+     * @return the resources, to be released when the entry is done
+     * @throws IllegalArgumentException if the level is not a deflate level
+     */
+    static DeflateResources acquire(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level " + level);
+        }
+        ArrayDeque<DeflateResources>[] cache = CACHE.get();
+        DeflateResources resources = cache == null ? null : cache[level + 1].poll();
+        return resources == null ? new DeflateResources(level) : resources;
+    }
+
+    /**
+     * Resets the resources and returns them to the cache of the current
+     * thread. If the thread has no cache or it is full the Deflater is ended
+     */
+    void release() {
+        ArrayDeque<DeflateResources>[] cache = CACHE.get();
+        if (cache != null && cache[level + 1].size() < MAX_CACHED) {
+            deflater.reset();
+            crc.reset();
+            cache[level + 1].push(this);
+        } else {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The caches of the worker threads of one batch. A job attaches a cache
+     * to its thread when it starts and detaches it when it is done, the cache
+     * is then reused by the next job. The Deflaters are ended when the batch
+     * ends the pool.
+     */
+    static final class Pool {
+
+        private final ArrayDeque<ArrayDeque<DeflateResources>[]> idle = new ArrayDeque<>();
+
+        private boolean ended;
+
+        /**
+         * Returns the pool of the cache attached to the current thread
+         *
+         * @return the pool or null if the thread has no cache
+         */
+        static Pool current() {
+            return POOL.get();
+        }
+
+        /**
+         * Attaches an idle cache, or a new one, to the current thread. A
+         * thread that already has a cache keeps it, like a job thread that
+         * runs a compression task itself
+         *
+         * @return true if a cache was attached and must be detached
+         */
+        boolean attach() {
+            if (CACHE.get() != null) {
+                return false;
+            }
+            ArrayDeque<DeflateResources>[] cache;
+            synchronized (this) {
+                cache = idle.poll();
+            }
+            CACHE.set(cache == null ? newCache() : cache);
+            POOL.set(this);
+            return true;
+        }
+
+        /**
+         * Detaches the cache of the current thread, it is ended if the pool
+         * has been ended in the meantime
+         */
+        void detach() {
+            ArrayDeque<DeflateResources>[] cache = CACHE.get();
+            CACHE.remove();
+            POOL.remove();
+            if (cache == null) {
+                return;
+            }
+            synchronized (this) {
+                if (!ended) {
+                    idle.push(cache);
+                    return;
+                }
+            }
+            end(cache);
+        }
+
+        /**
+         * Ends the Deflaters of the idle caches, caches still attached are
+         * ended when they are detached
+         */
+        void end() {
+            synchronized (this) {
+                ended = true;
+            }
+            for (ArrayDeque<DeflateResources>[] cache = poll(); cache != null; cache = poll()) {
+                end(cache);
+            }
+        }
+
+        private synchronized ArrayDeque<DeflateResources>[] poll() {
+            return idle.poll();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static ArrayDeque<DeflateResources>[] newCache() {
+            ArrayDeque<DeflateResources>[] cache = new ArrayDeque[Deflater.BEST_COMPRESSION + 2];
+            for (int i = 0; i < cache.length; i++) {
+                cache[i] = new ArrayDeque<>(MAX_CACHED);
+            }
+            return cache;
+        }
+
+        private static void end(ArrayDeque<DeflateResources>[] cache) {
+            for (ArrayDeque<DeflateResources> cached : cache) {
+                for (DeflateResources resources : cached) {
+                    resources.deflater.end();
+                }
+                cached.clear();
+            }
+        }
+    }
+
+}
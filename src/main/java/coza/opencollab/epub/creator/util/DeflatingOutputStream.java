@@ -0,0 +1,141 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates the data written to it into raw deflate blocks, keeping track of
+ * the CRC and sizes needed for the zip entry. Both the ZipWriter and the
+ * parallel compression use this so their output is identical.
+ *
+ * @author OpenCollab
+ */
+class DeflatingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    private final DeflateResources resources;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc;
+
+    private final byte[] buffer;
+
+    private long size;
+
+    private long compressedSize;
+
+    private long crcValue;
+
+    private boolean finished;
+
+    /**
+     * @param out the stream the deflated data is written to
+     * @param level the deflate level
+     */
+    DeflatingOutputStream(OutputStream out, int level) {
+        this.out = out;
+        this.resources = DeflateResources.acquire(level);
+        this.deflater = resources.deflater;
+        this.crc = resources.crc;
+        this.buffer = resources.buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        crc.update(b, off, len);
+        size += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int length = deflater.deflate(buffer, 0, buffer.length);
+        if (length > 0) {
+            compressedSize += length;
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Writes the remaining deflated data and releases the Deflater back to the
+     * cache of the thread. The underlying stream is not closed.
+     *
+     * @throws IOException if the data could not be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            crcValue = crc.getValue();
+        } finally {
+            resources.release();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    /**
+     * @return the CRC32 of the uncompressed data
+     */
+    public long getCrc() {
+        return finished ? crcValue : crc.getValue();
+    }
+
+    /**
+     * @return the uncompressed size
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the compressed size
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+}
@@ -0,0 +1,182 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A completely encoded EPUB that can be written to any number of targets
+ * without encoding the book again. It is held in memory or spooled to a file,
+ * created with EpubWriter.prepare. It is immutable and can be written by
+ * several threads at the same time. Close it to delete the spool file.
+ *
+ * @author OpenCollab
+ */
+public final class EncodedEpub implements Closeable {
+
+    /**
+     * The EPUB if it is held in memory
+     */
+    private final byte[] data;
+
+    /**
+     * The spool file if the EPUB is held on disk
+     */
+    private final Path file;
+
+    private final long size;
+
+    private EncodedEpub(byte[] data, Path file, long size) {
+        this.data = data;
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * Creates an EncodedEpub held in memory
+     *
+     * @param data
+     * @return
+     */
+    static EncodedEpub inMemory(byte[] data) {
+        return new EncodedEpub(data, null, data.length);
+    }
+
+    /**
+     * Creates an EncodedEpub held in a spool file, the file is deleted when
+     * it is closed
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static EncodedEpub spooled(Path file) throws IOException {
+        return new EncodedEpub(null, file, Files.size(file));
+    }
+
+    /**
+     * Writes the EPUB to a stream. File streams are written through their
+     * channel
+     *
+     * @param out the stream to write to, it is not closed
+     * @throws IOException if the EPUB could not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (out instanceof FileOutputStream) {
+            writeTo(((FileOutputStream) out).getChannel());
+        } else if (data != null) {
+            out.write(data);
+        } else {
+            Files.copy(file, out);
+        }
+    }
+
+    /**
+     * Writes the EPUB to a channel. A spooled EPUB is transferred from its
+     * file without passing through the Java heap
+     *
+     * @param channel the channel to write to, it is not closed
+     * @throws IOException if the EPUB could not be written
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        if (data != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return;
+        }
+        try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                long count = source.transferTo(position, size - position, channel);
+                if (count <= 0) {
+                    throw new IOException("Could not transfer the spooled EPUB, the file may have been truncated");
+                }
+                position += count;
+            }
+        }
+    }
+
+    /**
+     * Writes the EPUB to a file, replacing an existing file
+     *
+     * @param target the file to write
+     * @throws IOException if the file could not be written
+     */
+    public void writeTo(Path target) throws IOException {
+        if (data != null) {
+            Files.write(target, data);
+        } else {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Opens a stream to read the EPUB
+     *
+     * @return the stream, the caller must close it
+     * @throws IOException if the spool file could not be opened
+     */
+    public InputStream openStream() throws IOException {
+        return data != null ? new ByteArrayInputStream(data) : Files.newInputStream(file);
+    }
+
+    /**
+     * @return the size of the EPUB in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return whether the EPUB is spooled to a file rather than held in
+     * memory
+     */
+    public boolean isSpooled() {
+        return file != null;
+    }
+
+    /**
+     * Deletes the spool file, the EPUB can not be written afterwards
+     *
+     * @throws IOException if the spool file could not be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+}
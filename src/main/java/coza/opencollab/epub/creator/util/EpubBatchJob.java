@@ -0,0 +1,95 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.OutputStream;
+
+/**
+ * A book to be written by the EpubBatchWriter along with its output target,
+ * either a file name or an OutputStream
+ *
+ * @author OpenCollab
+ */
+public class EpubBatchJob {
+
+    /**
+     * The book to write
+     */
+    private final EpubBook book;
+
+    /**
+     * The name of the file to write to
+     */
+    private final String fileName;
+
+    /**
+     * The stream to write to, it is closed when the book has been written
+     */
+    private final OutputStream out;
+
+    /**
+     * Creates a job that writes the book to a file
+     *
+     * @param book the book to write
+     * @param fileName name of the file to be written
+     */
+    public EpubBatchJob(EpubBook book, String fileName) {
+        this.book = book;
+        this.fileName = fileName;
+        this.out = null;
+    }
+
+    /**
+     * Creates a job that writes the book to a stream
+     *
+     * @param book the book to write
+     * @param out the stream to write to, it is closed when the book has been
+     * written
+     */
+    public EpubBatchJob(EpubBook book, OutputStream out) {
+        this.book = book;
+        this.fileName = null;
+        this.out = out;
+    }
+
+    /**
+     * @return the book
+     */
+    public EpubBook getBook() {
+        return book;
+    }
+
+    /**
+     * @return the fileName, null if the job writes to a stream
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the out stream, null if the job writes to a file
+     */
+    public OutputStream getOut() {
+        return out;
+    }
+
+}
@@ -0,0 +1,86 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+/**
+ * The outcome of one EpubBatchJob
+ *
+ * @author OpenCollab
+ */
+public class EpubBatchResult {
+
+    private final EpubBatchJob job;
+
+    /**
+     * The exception or error that failed the job, null if it succeeded
+     */
+    private final Throwable exception;
+
+    /**
+     * The time taken to write the book in nanoseconds
+     */
+    private final long nanos;
+
+    /**
+     * Creates new instance of EpubBatchResult
+     *
+     * @param job the job
+     * @param exception the exception or error that failed the job, null if
+     * it succeeded
+     * @param nanos the time taken to write the book in nanoseconds
+     */
+    public EpubBatchResult(EpubBatchJob job, Throwable exception, long nanos) {
+        this.job = job;
+        this.exception = exception;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Indicates whether the book was written
+     *
+     * @return the success flag
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * @return the job
+     */
+    public EpubBatchJob getJob() {
+        return job;
+    }
+
+    /**
+     * @return the exception or error, null if the job succeeded
+     */
+    public Throwable getException() {
+        return exception;
+    }
+
+    /**
+     * @return the nanos
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+}
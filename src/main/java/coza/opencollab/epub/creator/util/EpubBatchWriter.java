@@ -0,0 +1,199 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes many books on a bounded number of threads with one shared
+ * EpubWriter. A failing book is reported in its EpubBatchResult and does not
+ * stop the other books. The Deflater, CRC32 and buffers are cached for the
+ * worker threads while the jobs run, so they are reused from book to book,
+ * and the Deflaters are ended when the batch is done.
+ *
+ * @author OpenCollab
+ */
+public class EpubBatchWriter {
+
+    /**
+     * The writer used for all books, it must not be reconfigured while a
+     * batch runs
+     */
+    private final EpubWriter writer;
+
+    /**
+     * The executor that runs the jobs, if null a fixed thread pool is created
+     * for each batch
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of books written at the same time
+     */
+    private final int maxConcurrentJobs;
+
+    /**
+     * Creates a batch writer that writes one book per available processor at
+     * a time
+     *
+     * @param writer the writer used for all books
+     */
+    public EpubBatchWriter(EpubWriter writer) {
+        this(writer, null, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a batch writer
+     *
+     * @param writer the writer used for all books
+     * @param executor the executor that runs the jobs, if null a fixed thread
+     * pool of maxConcurrentJobs threads is created for each batch
+     * @param maxConcurrentJobs the maximum number of books written at the
+     * same time
+     */
+    public EpubBatchWriter(EpubWriter writer, Executor executor, int maxConcurrentJobs) {
+        if (maxConcurrentJobs < 1) {
+            throw new IllegalArgumentException("maxConcurrentJobs must be at least 1");
+        }
+        this.writer = writer;
+        this.executor = executor;
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    /**
+     * Writes all the jobs and waits for them to finish. Jobs are taken from
+     * the Iterable only as threads become available, so it can lazily create
+     * the books.
+     *
+     * @param jobs the books and their output targets
+     * @return the result of each job, in the order of the jobs
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the jobs
+     */
+    public List<EpubBatchResult> writeAll(Iterable<EpubBatchJob> jobs) throws InterruptedException {
+        ExecutorService ownExecutor = null;
+        Executor jobExecutor = executor;
+        if (jobExecutor == null) {
+            ownExecutor = Executors.newFixedThreadPool(maxConcurrentJobs);
+            jobExecutor = ownExecutor;
+        }
+        final Semaphore permits = new Semaphore(maxConcurrentJobs);
+        final List<EpubBatchResult> results = new ArrayList<>();
+        final DeflateResources.Pool pool = new DeflateResources.Pool();
+        try {
+            for (final EpubBatchJob job : jobs) {
+                permits.acquire();
+                final int index;
+                synchronized (results) {
+                    index = results.size();
+                    results.add(null);
+                }
+                try {
+                    jobExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            boolean attached = pool.attach();
+                            try {
+                                EpubBatchResult result = write(job);
+                                synchronized (results) {
+                                    results.set(index, result);
+                                }
+                            } finally {
+                                if (attached) {
+                                    pool.detach();
+                                }
+                                permits.release();
+                            }
+                        }
+                    });
+                } catch (RuntimeException ex) {
+                    permits.release();
+                    synchronized (results) {
+                        results.set(index, new EpubBatchResult(job, ex, 0));
+                    }
+                }
+            }
+            permits.acquire(maxConcurrentJobs);
+            permits.release(maxConcurrentJobs);
+        } finally {
+            pool.end();
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+        synchronized (results) {
+            return new ArrayList<>(results);
+        }
+    }
+
+    /**
+     * Writes one job, a partially written file is deleted if the job fails.
+     * Errors are recorded as well, so a failing job never leaves its result
+     * empty
+     *
+     * @param job
+     * @return
+     */
+    private EpubBatchResult write(EpubBatchJob job) {
+        long start = System.nanoTime();
+        try {
+            if (job.getFileName() != null) {
+                writer.writeEpubToFile(job.getBook(), job.getFileName());
+            } else {
+                writer.writeEpubToStream(job.getBook(), job.getOut());
+            }
+            return new EpubBatchResult(job, null, System.nanoTime() - start);
+        } catch (Throwable ex) {
+            if (job.getFileName() != null) {
+                new File(job.getFileName()).delete();
+            }
+            return new EpubBatchResult(job, ex, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return the writer
+     */
+    public EpubWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the maxConcurrentJobs
+     */
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+}
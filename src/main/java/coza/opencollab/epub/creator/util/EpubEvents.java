@@ -0,0 +1,116 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+/**
+ * Hooks for the Java Flight Recorder events of EPUB generation. This class
+ * does nothing, on Java 11 and later the multi-release jar replaces it with
+ * one that records the EpubWrite, EpubEntryWrite, OpfBuild and TocBuild
+ * events. The started methods return the state of the events in progress,
+ * which is passed to the finished methods. The state of a write is kept with
+ * the write and not with the thread, so a write may continue on another
+ * thread. Entry events carry the id of the book of their write.
+ *
+ * @author OpenCollab
+ */
+public final class EpubEvents {
+
+    private EpubEvents() {
+    }
+
+    /**
+     * Called when a book is started to be written
+     *
+     * @param bookId the book id
+     * @return the events of the write, null if no events are recorded
+     */
+    public static Object writeStarted(String bookId) {
+        return null;
+    }
+
+    /**
+     * Called when a book has been written or failed
+     *
+     * @param write the events of the write
+     * @param bytesWritten the size of the EPUB written
+     * @param success whether the book was written completely
+     */
+    public static void writeFinished(Object write, long bytesWritten, boolean success) {
+    }
+
+    /**
+     * Called when a zip entry is started
+     *
+     * @param write the events of the write
+     */
+    public static void entryStarted(Object write) {
+    }
+
+    /**
+     * Called when a zip entry has been written
+     *
+     * @param write the events of the write
+     * @param href the entry name
+     * @param mediaType the media type of the entry
+     * @param size the uncompressed size
+     * @param compressedSize the size in the zip
+     */
+    public static void entryFinished(Object write, String href, String mediaType, long size, long compressedSize) {
+    }
+
+    /**
+     * Called when the OPF is started to be built
+     *
+     * @param bookId the book id
+     * @return the OPF event, null if it is not recorded
+     */
+    public static Object opfStarted(String bookId) {
+        return null;
+    }
+
+    /**
+     * Called when the OPF has been built
+     *
+     * @param opf the OPF event
+     * @param manifestItems the number of items in the manifest
+     */
+    public static void opfFinished(Object opf, int manifestItems) {
+    }
+
+    /**
+     * Called when the navigation document is started to be built
+     *
+     * @param bookId the book id
+     * @return the TOC event, null if it is not recorded
+     */
+    public static Object tocStarted(String bookId) {
+        return null;
+    }
+
+    /**
+     * Called when the navigation document has been built
+     *
+     * @param toc the TOC event
+     * @param links the number of top level links
+     */
+    public static void tocFinished(Object toc, int links) {
+    }
+}
@@ -0,0 +1,332 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Channel that encodes an EPUB as it is read. Each read runs the next steps
+ * of the write until there is data: the package entries, then a chunk of the
+ * current content entry at a time, and finally the central directory. Only
+ * the data not yet read is buffered, so a slow reader does not need a thread
+ * or a buffer of the whole book. At most MAX_MEMORY bytes are buffered in
+ * memory, a step that produces more, like the package documents of a very
+ * large book, overflows to a temporary file in the spill directory of the
+ * book. Reads and close are synchronized. The content entries are written by
+ * the same ContentEntries as the EpubWriter uses, so the validator, the
+ * executor and shared sources work the same way.
+ *
+ * @author OpenCollab
+ */
+class EpubReadableChannel implements ReadableByteChannel {
+
+    /**
+     * The size of the buffer of the encoded data, grown as needed
+     */
+    private static final int BUFFER_SIZE = 16384;
+
+    /**
+     * The most encoded data kept in memory
+     */
+    private static final int MAX_MEMORY = 1024 * 1024;
+
+    private final EpubWriter writer;
+
+    private final EpubBook book;
+
+    /**
+     * The encoded data not yet read
+     */
+    private final PendingData pending;
+
+    private final ZipWriter zip;
+
+    /**
+     * The content entries, null until the package entries are written
+     */
+    private ContentEntries entries;
+
+    /**
+     * The time the write started, used for the write listener
+     */
+    private long writeStart;
+
+    private boolean started;
+
+    private boolean finished;
+
+    /**
+     * The failure of the write, every later read throws it again
+     */
+    private Exception failure;
+
+    private boolean open = true;
+
+    /**
+     * Creates new instance of EpubReadableChannel
+     *
+     * @param writer the writer configuration to use
+     * @param book the book to encode
+     */
+    EpubReadableChannel(EpubWriter writer, EpubBook book) {
+        this.writer = writer;
+        this.book = book;
+        this.pending = new PendingData(book.getSpillDirectory());
+        this.zip = new ZipWriter(pending);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (failure != null) {
+            throw new IOException("The EPUB could not be written", failure);
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        while (pending.isEmpty()) {
+            if (finished) {
+                pending.deleteOverflow();
+                return -1;
+            }
+            try {
+                step();
+            } catch (IOException | RuntimeException ex) {
+                fail(ex);
+                throw ex;
+            }
+        }
+        return pending.drainTo(dst);
+    }
+
+    /**
+     * Runs the next step of the write
+     *
+     * @throws IOException
+     */
+    private void step() throws IOException {
+        if (!started) {
+            writer.validate(book);
+            writeStart = writer.writeStarted(book, zip);
+            started = true;
+            writer.writePackage(zip, book);
+            entries = new ContentEntries(writer, zip, book.getContents(), null, true);
+        } else if (!entries.step()) {
+            entries.close();
+            zip.close();
+            finished = true;
+            writer.writeFinished(book, zip, writeStart);
+        }
+    }
+
+    /**
+     * Records the failure, releases the content entries and aborts the zip
+     *
+     * @param ex the failure
+     */
+    private void fail(Exception ex) {
+        failure = ex;
+        try {
+            closeEntries();
+        } catch (IOException closeEx) {
+            ex.addSuppressed(closeEx);
+        }
+        if (started) {
+            writer.writeFailed(book, zip, ex);
+        }
+    }
+
+    private void closeEntries() throws IOException {
+        if (entries != null) {
+            ContentEntries current = entries;
+            entries = null;
+            current.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Closes the channel. If the book has not been read completely the rest
+     * of the book is not encoded, the current content source is closed,
+     * pending compressions are cancelled and the write is reported as failed
+     *
+     * @throws IOException if the current content source could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            if (finished || failure != null) {
+                return;
+            }
+            failure = new ClosedChannelException();
+            try {
+                closeEntries();
+            } finally {
+                if (started) {
+                    writer.writeFailed(book, zip, failure);
+                }
+            }
+        } finally {
+            pending.deleteOverflow();
+        }
+    }
+
+    /**
+     * Buffer the ZipWriter writes to and the reader drains. Data that does
+     * not fit in MAX_MEMORY is appended to the overflow file, which is read
+     * after the data in memory. Once there is data in the overflow file all
+     * writes go there until it has been read, so the order is kept
+     */
+    private static class PendingData implements WritableByteChannel {
+
+        /**
+         * The directory of the overflow file, the default temporary directory
+         * is used if this is null
+         */
+        private final Path directory;
+        private byte[] data = new byte[BUFFER_SIZE];
+        private int start;
+        private int end;
+        private FileChannel overflow;
+        private long overflowStart;
+        private long overflowEnd;
+
+        PendingData(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            int size = end - start;
+            if (overflowStart != overflowEnd || size + length > MAX_MEMORY) {
+                writeOverflow(src);
+                return length;
+            }
+            if (end + length > data.length) {
+                byte[] target = size + length > data.length
+                        ? new byte[Math.min(Math.max(data.length * 2, size + length), MAX_MEMORY)] : data;
+                System.arraycopy(data, start, target, 0, size);
+                data = target;
+                start = 0;
+                end = size;
+            }
+            src.get(data, end, length);
+            end += length;
+            return length;
+        }
+
+        private void writeOverflow(ByteBuffer src) throws IOException {
+            if (overflow == null) {
+                Path file = directory == null
+                        ? Files.createTempFile("epub-", ".pending")
+                        : Files.createTempFile(directory, "epub-", ".pending");
+                overflow = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            while (src.hasRemaining()) {
+                overflowEnd += overflow.write(src, overflowEnd);
+            }
+        }
+
+        boolean isEmpty() {
+            return start == end && overflowStart == overflowEnd;
+        }
+
+        int drainTo(ByteBuffer dst) throws IOException {
+            if (start == end) {
+                return drainOverflow(dst);
+            }
+            int length = Math.min(dst.remaining(), end - start);
+            dst.put(data, start, length);
+            start += length;
+            if (start == end) {
+                start = 0;
+                end = 0;
+            }
+            return length;
+        }
+
+        private int drainOverflow(ByteBuffer dst) throws IOException {
+            int length = overflow.read(dst, overflowStart);
+            overflowStart += length;
+            if (overflowStart == overflowEnd) {
+                overflowStart = 0;
+                overflowEnd = 0;
+                overflow.truncate(0);
+            }
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        /**
+         * The ZipWriter closes the buffer when the zip is finished, the data
+         * is still to be read
+         */
+        @Override
+        public void close() {
+        }
+
+        /**
+         * Deletes the overflow file, the data in it is dropped
+         *
+         * @throws IOException if the overflow file could not be closed
+         */
+        void deleteOverflow() throws IOException {
+            if (overflow != null) {
+                FileChannel current = overflow;
+                overflow = null;
+                overflowStart = 0;
+                overflowEnd = 0;
+                current.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.ChannelContentSource;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an EPUB while the content is added. Each content entry is written as
+ * soon as it is added and the book then only keeps its metadata, so the heap
+ * used does not grow with the size of the content. The OPF and the
+ * navigation document are written when the writer is closed. Created with
+ * EpubWriter.openEpubWriter.
+ *
+ * @author OpenCollab
+ */
+public class EpubStreamWriter implements Closeable {
+
+    private final EpubWriter writer;
+
+    private final EpubBook book;
+
+    private final ZipWriter zip;
+
+    /**
+     * The nano time the write started
+     */
+    private final long start;
+
+    private boolean closed;
+
+    private boolean failed;
+
+    /**
+     * Creates new instance of EpubStreamWriter and writes the mime type, the
+     * container and the content already in the book
+     *
+     * @param writer the configuration of the EPUB
+     * @param book the EpubBook with the meta data
+     * @param out the stream to write the EPUB to
+     * @throws IOException if the EPUB could not be started
+     */
+    EpubStreamWriter(EpubWriter writer, EpubBook book, OutputStream out) throws IOException {
+        this.writer = writer;
+        this.book = book;
+        this.zip = new ZipWriter(out);
+        start = writer.writeStarted(book, zip);
+        try {
+            writer.writeContainer(zip, book);
+        } catch (IOException | RuntimeException ex) {
+            fail(ex);
+            throw ex;
+        }
+        for (Content content : new ArrayList<>(book.getContents())) {
+            write(content);
+        }
+    }
+
+    /**
+     * Adds content to the book and writes it, see EpubBook.addContent
+     *
+     * @param content the EpubBook content - pages, files
+     * @return boolean indicating if the content has been added
+     * @throws IOException if the content could not be written
+     */
+    public boolean addContent(Content content) throws IOException {
+        checkOpen();
+        book.addContent(content);
+        write(content);
+        return true;
+    }
+
+    /**
+     * Creates content from a byte array, adds it to the book and writes it
+     *
+     * @param contents the byte array content
+     * @param mediaType the mime type
+     * @param href used as unique link
+     * @param toc flag whether it must be added to the TOC
+     * @param spine flag whether it must be added to the spine
+     * @return a reference to the Content object with only the metadata
+     * @throws IOException if the content could not be written
+     */
+    public Content addContent(byte[] contents, String mediaType, String href, boolean toc, boolean spine) throws IOException {
+        checkOpen();
+        return write(book.addContent(contents, mediaType, href, toc, spine));
+    }
+
+    /**
+     * Creates content from an InputStream, adds it to the book and writes it.
+     * The stream is copied into the EPUB without reading it into memory and
+     * closed afterwards. A STORED entry needs its CRC and size up front, so
+     * content the compression policy stores is first copied to a temporary
+     * file
+     *
+     * @param contents the InputStream to the content
+     * @param mediaType the mime type
+     * @param href used as unique link
+     * @param toc flag whether it must be added to the TOC
+     * @param spine flag whether it must be added to the spine
+     * @return a reference to the Content object with only the metadata
+     * @throws IOException if the content could not be written
+     */
+    public Content addContent(InputStream contents, String mediaType, String href, boolean toc, boolean spine) throws IOException {
+        checkOpen();
+        int level = writer.getCompressionPolicy().getCompressionLevel(new Content(mediaType, href, (ContentSource) null));
+        if (level != Deflater.NO_COMPRESSION) {
+            ContentSource source = new ChannelContentSource(Channels.newChannel(contents));
+            return write(book.addContent(source, mediaType, href, toc, spine));
+        }
+        Path file = book.getSpillDirectory() == null
+                ? Files.createTempFile("epub-", ".stored")
+                : Files.createTempFile(book.getSpillDirectory(), "epub-", ".stored");
+        try {
+            try (InputStream in = contents) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return write(book.addContent(file, mediaType, href, toc, spine));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Creates content from a file, adds it to the book and writes it
+     *
+     * @param file the file
+     * @param mediaType the mime type
+     * @param href used as unique link
+     * @param toc flag whether it must be added to the TOC
+     * @param spine flag whether it must be added to the spine
+     * @return a reference to the Content object with only the metadata
+     * @throws IOException if the content could not be written
+     */
+    public Content addContent(Path file, String mediaType, String href, boolean toc, boolean spine) throws IOException {
+        checkOpen();
+        return write(book.addContent(file, mediaType, href, toc, spine));
+    }
+
+    /**
+     * Wraps a String in the HTML wrapper, adds it to the book and writes it
+     *
+     * @param title the title of the page
+     * @param href used as unique link
+     * @param content text content to be added
+     * @return a reference to the Content object with only the metadata
+     * @throws IOException if the content could not be written
+     */
+    public Content addTextContent(String title, String href, String content) throws IOException {
+        checkOpen();
+        return write(book.addTextContent(title, href, content));
+    }
+
+    /**
+     * Fills in a template, adds the result to the book and writes it
+     *
+     * @param template the XHTML template
+     * @param href used as unique link
+     * @param values the values of the template placeholders
+     * @return a reference to the Content object with only the metadata
+     * @throws IOException if the content could not be written
+     */
+    public Content addTextContent(TextTemplate template, String href, CharSequence... values) throws IOException {
+        checkOpen();
+        return write(book.addTextContent(template, href, values));
+    }
+
+    /**
+     * Writes the OPF, the navigation document and the central directory. If
+     * writing content failed the EPUB is not finished, the stream was already
+     * closed when the failure happened
+     *
+     * @throws IOException if the EPUB could not be finished
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (failed) {
+            return;
+        }
+        try {
+            writer.writePackageDocuments(zip, book);
+            zip.close();
+        } catch (IOException | RuntimeException ex) {
+            fail(ex);
+            throw ex;
+        }
+        writer.writeFinished(book, zip, start);
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long getBytesWritten() {
+        return zip.getBytesWritten();
+    }
+
+    /**
+     * Writes content already added to the book and replaces it in the book
+     * with a copy without the source
+     *
+     * @param content
+     * @return the copy
+     * @throws IOException
+     */
+    private Content write(Content content) throws IOException {
+        try {
+            writer.writeContent(zip, content);
+        } catch (IOException | RuntimeException ex) {
+            fail(ex);
+            throw ex;
+        }
+        Content metadata = new Content(content.getMediaType(), content.getHref(), content.getId(),
+                content.getProperties(), (ContentSource) null);
+        metadata.setLinear(content.isLinear());
+        metadata.setSpine(content.isSpine());
+        metadata.setToc(content.isToc());
+        if (content.hasFallBack()) {
+            Content fallBack = book.getContentByHref(content.getFallBack().getHref());
+            metadata.setFallBack(fallBack == null ? content.getFallBack() : fallBack);
+        }
+        book.replaceContent(content.getHref(), metadata);
+        return metadata;
+    }
+
+    private void checkOpen() {
+        if (closed || failed) {
+            throw new IllegalStateException("The EPUB writer is " + (failed ? "failed" : "closed"));
+        }
+    }
+
+    /**
+     * Marks the writer failed and closes the stream without finishing the zip
+     *
+     * @param ex the failure
+     */
+    private void fail(Exception ex) {
+        failed = true;
+        writer.writeFailed(book, zip, ex);
+    }
+}
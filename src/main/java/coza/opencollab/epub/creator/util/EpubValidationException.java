@@ -0,0 +1,53 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown by the EpubWriter when the validator found problems in a book. Nothing
+ * has been written when it is thrown.
+ *
+ * @author OpenCollab
+ */
+public class EpubValidationException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final EpubValidationReport report;
+
+    /**
+     * Creates new instance of EpubValidationException
+     *
+     * @param report the report with the problems
+     */
+    public EpubValidationException(EpubValidationReport report) {
+        super(report.toString());
+        this.report = report;
+    }
+
+    /**
+     * @return the report with the problems
+     */
+    public EpubValidationReport getReport() {
+        return report;
+    }
+}
@@ -0,0 +1,197 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The problems an EpubValidator found in a book. The report is immutable and
+ * serializable, so the EpubValidationException carrying it can be serialized.
+ *
+ * @author OpenCollab
+ */
+public final class EpubValidationReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The kind of problem
+     */
+    public enum Type {
+
+        /**
+         * XHTML or SVG content that is not well-formed XML
+         */
+        NOT_WELL_FORMED,
+        /**
+         * A link or resource in content that is not in the book
+         */
+        MISSING_REFERENCE,
+        /**
+         * A TOC link that is not in the book
+         */
+        MISSING_TOC_TARGET,
+        /**
+         * A landmark that is not in the book
+         */
+        MISSING_LANDMARK_TARGET,
+        /**
+         * A fallback that is not in the book
+         */
+        MISSING_FALLBACK,
+        /**
+         * Content that could not be read
+         */
+        UNREADABLE
+    }
+
+    private final List<Problem> problems;
+
+    private final int contentsChecked;
+
+    /**
+     * Creates new instance of EpubValidationReport
+     *
+     * @param problems the problems found
+     * @param contentsChecked the number of content objects that were read
+     */
+    EpubValidationReport(List<Problem> problems, int contentsChecked) {
+        this.problems = Collections.unmodifiableList(new ArrayList<>(problems));
+        this.contentsChecked = contentsChecked;
+    }
+
+    /**
+     * @return true if no problems were found
+     */
+    public boolean isValid() {
+        return problems.isEmpty();
+    }
+
+    /**
+     * @return the problems in book order
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Returns the problems of one kind
+     *
+     * @param type the kind of problem
+     * @return the problems in book order
+     */
+    public List<Problem> getProblems(Type type) {
+        List<Problem> found = new ArrayList<>();
+        for (Problem problem : problems) {
+            if (problem.getType() == type) {
+                found.add(problem);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the number of content objects that were read
+     */
+    public int getContentsChecked() {
+        return contentsChecked;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append(problems.size()).append(" problems in ").append(contentsChecked).append(" contents checked");
+        for (Problem problem : problems) {
+            text.append('\n').append(problem);
+        }
+        return text.toString();
+    }
+
+    /**
+     * A problem found in the book
+     */
+    public static final class Problem implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Type type;
+        private final String href;
+        private final int line;
+        private final String message;
+
+        /**
+         * Creates new instance of Problem
+         *
+         * @param type the kind of problem
+         * @param href the href of the content, TOC link or landmark
+         * @param line the line in the content or -1
+         * @param message the description of the problem
+         */
+        Problem(Type type, String href, int line, String message) {
+            this.type = type;
+            this.href = href;
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * @return the type
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return the href of the content, TOC link or landmark
+         */
+        public String getHref() {
+            return href;
+        }
+
+        /**
+         * @return the line in the content or -1 if not known
+         */
+        public int getLine() {
+            return line;
+        }
+
+        /**
+         * @return the message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return type + " " + href + (line < 0 ? "" : ":" + line) + " " + message;
+        }
+    }
+}
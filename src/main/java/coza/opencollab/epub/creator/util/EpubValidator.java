@@ -0,0 +1,339 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.EpubConstants;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.Landmark;
+import coza.opencollab.epub.creator.model.TocLink;
+import coza.opencollab.epub.creator.util.EpubValidationReport.Problem;
+import coza.opencollab.epub.creator.util.EpubValidationReport.Type;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Checks a book before it is written. XHTML and SVG content must be
+ * well-formed, the local links and resources of XHTML, SVG and CSS content
+ * must be in the book and so must the TOC links, landmarks and fallbacks. The
+ * content is read in parallel if an executor is set. Content that can only be
+ * read once is not read. The validator can be shared between threads once it
+ * is configured.
+ *
+ * @author OpenCollab
+ */
+public class EpubValidator {
+
+    /**
+     * Configured once and then only used to create readers
+     */
+    private final XMLInputFactory inputFactory;
+
+    /**
+     * The executor used to read the content in parallel. If this is null the
+     * content is read on the calling thread
+     */
+    private volatile Executor executor;
+
+    /**
+     * The href of the navigation document, which is not in the book contents
+     */
+    private volatile String tocHref = EpubConstants.TOC_FILE_NAME;
+
+    /**
+     * Creates new instance of EpubValidator
+     */
+    public EpubValidator() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+    }
+
+    /**
+     * Validates a book
+     *
+     * @param book the EpubBook
+     * @return the report with the problems found
+     */
+    public EpubValidationReport validate(EpubBook book) {
+        Set<String> hrefs = new HashSet<>();
+        hrefs.add(tocHref);
+        for (Content content : book.getContents()) {
+            hrefs.add(content.getHref());
+        }
+        List<FutureTask<List<Problem>>> tasks = new ArrayList<>();
+        List<Problem> problems = new ArrayList<>();
+        Executor current = executor;
+        for (Content content : book.getContents()) {
+            if (isReadable(content)) {
+                FutureTask<List<Problem>> task = validateTask(content, hrefs);
+                if (current == null) {
+                    task.run();
+                } else {
+                    current.execute(task);
+                }
+                tasks.add(task);
+            }
+        }
+        for (Content content : book.getContents()) {
+            if (content.hasFallBack() && !hrefs.contains(content.getFallBack().getHref())) {
+                problems.add(new Problem(Type.MISSING_FALLBACK, content.getHref(), -1,
+                        "The fallback " + content.getFallBack().getHref() + " is not in the book"));
+            }
+        }
+        if (book.getTocLinks() != null && !book.isAutoToc()) {
+            validateTocLinks(book.getTocLinks(), hrefs, problems);
+        }
+        if (book.getLandmarks() != null) {
+            for (Landmark landmark : book.getLandmarks()) {
+                if (!isResolved(tocHref, landmark.getHref(), hrefs)) {
+                    problems.add(new Problem(Type.MISSING_LANDMARK_TARGET, landmark.getHref(), -1,
+                            "The landmark " + landmark.getTitle() + " is not in the book"));
+                }
+            }
+        }
+        List<Problem> contentProblems = new ArrayList<>();
+        for (FutureTask<List<Problem>> task : tasks) {
+            contentProblems.addAll(getProblems(task));
+        }
+        contentProblems.addAll(problems);
+        return new EpubValidationReport(contentProblems, tasks.size());
+    }
+
+    private static boolean isReadable(Content content) {
+        ContentSource source = content.getSource();
+        return source != null && source.isRepeatable() && (isXml(content) || "text/css".equals(content.getMediaType()));
+    }
+
+    private static boolean isXml(Content content) {
+        return "application/xhtml+xml".equals(content.getMediaType()) || "image/svg+xml".equals(content.getMediaType());
+    }
+
+    /**
+     * Creates the task validating a content object
+     *
+     * @param content
+     * @param hrefs
+     * @return
+     */
+    private FutureTask<List<Problem>> validateTask(final Content content, final Set<String> hrefs) {
+        return new FutureTask<>(new Callable<List<Problem>>() {
+            @Override
+            public List<Problem> call() {
+                List<Problem> problems = new ArrayList<>();
+                try (InputStream in = content.getSource().openStream()) {
+                    if (isXml(content)) {
+                        validateXml(content.getHref(), in, hrefs, problems);
+                    } else {
+                        validateCss(content.getHref(), IOUtils.toString(in, StandardCharsets.UTF_8.name()), hrefs, problems);
+                    }
+                } catch (IOException ex) {
+                    problems.add(new Problem(Type.UNREADABLE, content.getHref(), -1, String.valueOf(ex.getMessage())));
+                }
+                return problems;
+            }
+        });
+    }
+
+    private List<Problem> getProblems(FutureTask<List<Problem>> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(new InterruptedIOException("Interrupted while validating"));
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Could not validate the book", ex.getCause());
+        }
+    }
+
+    /**
+     * Parses XHTML or SVG and checks the href, src and xlink:href attributes
+     *
+     * @param href
+     * @param in
+     * @param hrefs
+     * @param problems
+     */
+    private void validateXml(String href, InputStream in, Set<String> hrefs, List<Problem> problems) {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        String name = reader.getAttributeLocalName(i);
+                        if ("href".equals(name) || "src".equals(name)) {
+                            checkReference(href, reader.getAttributeValue(i), reader.getLocation().getLineNumber(), hrefs, problems);
+                        }
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            int line = ex.getLocation() == null ? -1 : ex.getLocation().getLineNumber();
+            problems.add(new Problem(Type.NOT_WELL_FORMED, href, line, ex.getMessage()));
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // the stream is closed by the caller
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the url() and @import references of CSS
+     *
+     * @param href
+     * @param css
+     * @param hrefs
+     * @param problems
+     */
+    private void validateCss(String href, String css, Set<String> hrefs, List<Problem> problems) {
+        for (CssReferences.Reference reference : CssReferences.find(css)) {
+            checkReference(href, reference.getValue(), reference.getLine(), hrefs, problems);
+        }
+    }
+
+    private void validateTocLinks(List<TocLink> links, Set<String> hrefs, List<Problem> problems) {
+        for (TocLink link : links) {
+            if (!isResolved(tocHref, link.getHref(), hrefs)) {
+                problems.add(new Problem(Type.MISSING_TOC_TARGET, link.getHref(), -1,
+                        "The TOC link " + link.getTitle() + " is not in the book"));
+            }
+            if (link.getTocChildLinks() != null) {
+                validateTocLinks(link.getTocChildLinks(), hrefs, problems);
+            }
+        }
+    }
+
+    private void checkReference(String href, String reference, int line, Set<String> hrefs, List<Problem> problems) {
+        if (!isResolved(href, reference, hrefs)) {
+            problems.add(new Problem(Type.MISSING_REFERENCE, href, line, "The reference " + reference + " is not in the book"));
+        }
+    }
+
+    /**
+     * Checks whether a reference relative to an href is in the book. External
+     * references and references within the same document are not checked
+     *
+     * @param href
+     * @param reference
+     * @param hrefs
+     * @return
+     */
+    private static boolean isResolved(String href, String reference, Set<String> hrefs) {
+        if (reference == null) {
+            return false;
+        }
+        if (reference.isEmpty() || reference.startsWith("#") || isRemote(reference)) {
+            return true;
+        }
+        String resolved = resolve(href, reference);
+        return resolved != null && hrefs.contains(resolved);
+    }
+
+    /**
+     * Checks whether a reference has a scheme or an authority
+     *
+     * @param reference
+     * @return
+     */
+    static boolean isRemote(String reference) {
+        try {
+            URI uri = new URI(reference);
+            return uri.isAbsolute() || uri.getRawAuthority() != null;
+        } catch (URISyntaxException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Resolves a local reference relative to an href, without the fragment
+     * and query
+     *
+     * @param href
+     * @param reference
+     * @return the href of the reference or null if it is not a valid local
+     * reference
+     */
+    static String resolve(String href, String reference) {
+        try {
+            URI resolved = new URI(null, null, href, null).resolve(new URI(reference));
+            String path = resolved.getPath();
+            return path == null || path.isEmpty() || path.startsWith("../") ? null : path;
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to read the content in parallel, null reads the
+     * content on the calling thread
+     *
+     * @param executor the executor to set
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the tocHref
+     */
+    public String getTocHref() {
+        return tocHref;
+    }
+
+    /**
+     * Sets the href of the navigation document, links to it are valid
+     *
+     * @param tocHref the tocHref to set
+     */
+    public void setTocHref(String tocHref) {
+        this.tocHref = tocHref;
+    }
+}
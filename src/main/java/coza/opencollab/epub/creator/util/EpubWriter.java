@@ -21,40 +21,104 @@
 package coza.opencollab.epub.creator.util;
 
 import coza.opencollab.epub.creator.EpubConstants;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Executor;
 import java.util.zip.CRC32;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
+import coza.opencollab.epub.creator.api.CompressedEntryCache;
+import coza.opencollab.epub.creator.api.CompressionPolicy;
+import coza.opencollab.epub.creator.api.EpubWriteListener;
 import coza.opencollab.epub.creator.api.OpfCreator;
+import coza.opencollab.epub.creator.api.OpfStreamCreator;
 import coza.opencollab.epub.creator.api.TocCreator;
-import coza.opencollab.epub.creator.impl.OpfCreatorDefault;
-import coza.opencollab.epub.creator.impl.TocCreatorDefault;
+import coza.opencollab.epub.creator.api.TocStreamCreator;
+import coza.opencollab.epub.creator.impl.CompressionPolicyDefault;
+import coza.opencollab.epub.creator.impl.OpfCreatorStreaming;
+import coza.opencollab.epub.creator.impl.TocCreatorStreaming;
 import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
 import coza.opencollab.epub.creator.model.EpubBook;
 import java.util.List;
+import org.apache.commons.io.IOUtils;
 
 /**
  * The EpubWriter creates the EPUB zip bundle.
  *
+ * Writing never changes the writer or the book, so one writer can be used by
+ * several threads at the same time. Call freeze once it is configured to make
+ * the configuration immutable before sharing it, for example as a singleton
+ * in a server. The configured creators and policy must be thread-safe too,
+ * all the implementations in this library are.
+ *
  * @author OpenCollab
  */
 public class EpubWriter {
 
-    private String containerXML = EpubConstants.CONTAINER_XML;
+    private static final String OPF_MEDIA_TYPE = "application/oebps-package+xml";
+
+    private volatile String containerXML = EpubConstants.CONTAINER_XML;
+
+    private volatile String contentFolder = EpubConstants.CONTENT_FOLDER;
+
+    private volatile String opfFileName = EpubConstants.OPF_FILE_NAME;
+
+    private volatile OpfCreator opfCreator = new OpfCreatorStreaming();
+
+    private volatile TocCreator tocCreator = new TocCreatorStreaming();
+
+    private volatile CompressionPolicy compressionPolicy = new CompressionPolicyDefault();
+
+    /**
+     * The executor used to deflate content entries in parallel. If this is
+     * null the entries are deflated on the writing thread
+     */
+    private volatile Executor executor;
+
+    /**
+     * The maximum number of entries deflated ahead of the entry being
+     * written when an executor is set. This bounds the memory used for the
+     * compressed entries waiting to be written
+     */
+    private volatile int maxPendingEntries = 16;
 
-    private String contentFolder = EpubConstants.CONTENT_FOLDER;
+    /**
+     * The cache of compressed entries shared between books. If this is null
+     * every entry is compressed
+     */
+    private volatile CompressedEntryCache compressedEntryCache;
 
-    private String opfFileName = EpubConstants.OPF_FILE_NAME;
+    /**
+     * The listener told about the progress of each write. If this is null no
+     * timings are taken
+     */
+    private volatile EpubWriteListener writeListener;
 
-    private OpfCreator opfCreator = new OpfCreatorDefault();
+    /**
+     * The validator run before each write. If this is null books are not
+     * validated
+     */
+    private volatile EpubValidator validator;
 
-    private TocCreator tocCreator = new TocCreatorDefault();
+    /**
+     * Indicates whether the configuration can no longer be changed
+     */
+    private volatile boolean frozen;
 
     /**
      * Writes the EPUB book zip container and contents to a file
@@ -77,42 +141,423 @@ public class EpubWriter {
      * @throws IOException if file could not be written
      */
     public void writeEpubToStream(EpubBook book, OutputStream out) throws IOException {
-        try (ZipOutputStream resultStream = new ZipOutputStream(out)) {
-            List<Content> contents = book.getContents();
-            addMimeType(resultStream);
-            contents.add(0, getTocCreator().createTocFromBook(book));
-            addStringToZip(resultStream, "META-INF/container.xml", MessageFormat.format(containerXML, contentFolder));
-            addStringToZip(resultStream, contentFolder + "/" + getOpfFileName(), getOpfCreator().createOpfString(book));
-            addContent(resultStream, contents);
+        writeEpub(book, out, null);
+    }
+
+    /**
+     * Writes the EPUB book to an OutputStream reusing the entries of a
+     * previously written EPUB. Content with the same href, size and CRC as the
+     * entry in the previous EPUB is copied without being compressed again.
+     * The OPF and navigation document are always written again.
+     *
+     * @param book the EpubBook
+     * @param out the OutputStream to write to
+     * @param previous the EPUB previously written for the book
+     * @throws IOException if file could not be written
+     */
+    public void writeEpubToStream(EpubBook book, OutputStream out, Path previous) throws IOException {
+        try (ZipIndex index = new ZipIndex(previous)) {
+            writeEpub(book, out, index);
+        }
+    }
+
+    /**
+     * Updates an EPUB file written before for the book. Only the changed
+     * content is compressed, the new EPUB is written to a temporary file that
+     * then replaces the existing file. If the file does not exist it is
+     * written in full.
+     *
+     * @param book the EpubBook
+     * @param fileName name of the file to be updated
+     * @throws IOException if file could not be written
+     */
+    public void updateEpubFile(EpubBook book, String fileName) throws IOException {
+        Path file = Paths.get(fileName).toAbsolutePath();
+        if (!Files.exists(file)) {
+            writeEpubToFile(book, fileName);
+            return;
+        }
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                writeEpubToStream(book, out, file);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Encodes the EPUB book in memory once, so it can be written to several
+     * targets without building the TOC and OPF or compressing the content
+     * again. The book is not changed.
+     *
+     * @param book the EpubBook
+     * @return the encoded EPUB
+     * @throws IOException if the book could not be encoded
+     */
+    public EncodedEpub prepare(EpubBook book) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeEpubToStream(book, out);
+        return EncodedEpub.inMemory(out.toByteArray());
+    }
+
+    /**
+     * Encodes the EPUB book once into a spool file in the directory, so large
+     * books can be written to several targets without being held in memory.
+     * Close the encoded EPUB to delete the spool file.
+     *
+     * @param book the EpubBook
+     * @param spoolDirectory the directory of the spool file
+     * @return the encoded EPUB
+     * @throws IOException if the book could not be encoded
+     */
+    public EncodedEpub prepare(EpubBook book, Path spoolDirectory) throws IOException {
+        Path file = Files.createTempFile(spoolDirectory, "epub-", ".epub");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file.toFile())) {
+                writeEpubToStream(book, out);
+            }
+            return EncodedEpub.spooled(file);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(file);
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes the EPUB book zip container and contents
+     *
+     * @param book
+     * @param out
+     * @param previous
+     * @throws IOException
+     */
+    private void writeEpub(EpubBook book, OutputStream out, ZipIndex previous) throws IOException {
+        validate(book);
+        ZipWriter zip = new ZipWriter(out);
+        long start = writeStarted(book, zip);
+        try (ContentEntries entries = new ContentEntries(this, zip, book.getContents(), previous, false)) {
+            writePackage(zip, book);
+            entries.writeAll();
+            zip.close();
+        } catch (IOException | RuntimeException ex) {
+            writeFailed(book, zip, ex);
+            throw ex;
+        }
+        writeFinished(book, zip, start);
+    }
+
+    /**
+     * Validates the book if there is a validator
+     *
+     * @param book
+     * @throws EpubValidationException if the book is not valid
+     */
+    void validate(EpubBook book) throws EpubValidationException {
+        EpubValidator currentValidator = validator;
+        if (currentValidator != null) {
+            EpubValidationReport report = currentValidator.validate(book);
+            if (!report.isValid()) {
+                throw new EpubValidationException(report);
+            }
         }
     }
 
+    /**
+     * Tells the listener and the flight recorder the write of a book is
+     * started
+     *
+     * @param book
+     * @param resultStream the zip the events of the write are kept with
+     * @return the start time or 0 if there is no listener
+     */
+    long writeStarted(EpubBook book, ZipWriter resultStream) {
+        EpubWriteListener listener = writeListener;
+        long start = 0;
+        if (listener != null) {
+            listener.writeStarted(book);
+            start = System.nanoTime();
+        }
+        resultStream.setEvents(EpubEvents.writeStarted(book.getId()));
+        return start;
+    }
+
+    /**
+     * Tells the listener and the flight recorder the book has been written
+     *
+     * @param book
+     * @param resultStream
+     * @param start
+     */
+    void writeFinished(EpubBook book, ZipWriter resultStream, long start) {
+        EpubEvents.writeFinished(resultStream.getEvents(), resultStream.getBytesWritten(), true);
+        EpubWriteListener listener = writeListener;
+        if (listener != null) {
+            listener.writeFinished(book, resultStream.getBytesWritten(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Tells the flight recorder and the listener the write of the book failed
+     * and aborts the zip, the central directory is not written
+     *
+     * @param book
+     * @param resultStream
+     * @param ex
+     */
+    void writeFailed(EpubBook book, ZipWriter resultStream, Exception ex) {
+        try {
+            EpubEvents.writeFinished(resultStream.getEvents(), resultStream.getBytesWritten(), false);
+            EpubWriteListener listener = writeListener;
+            if (listener != null) {
+                listener.writeFailed(book, ex);
+            }
+        } finally {
+            try {
+                resultStream.abort();
+            } catch (IOException abortEx) {
+                ex.addSuppressed(abortEx);
+            }
+        }
+    }
+
+    /**
+     * Writes the entries that come before the content: the mime type, the
+     * container, the OPF and the navigation document
+     *
+     * @param resultStream
+     * @param book
+     * @throws IOException
+     */
+    void writePackage(ZipWriter resultStream, EpubBook book) throws IOException {
+        writeContainer(resultStream, book);
+        writePackageDocuments(resultStream, book);
+    }
+
+    /**
+     * Writes the mime type and the container
+     *
+     * @param resultStream
+     * @param book
+     * @throws IOException
+     */
+    void writeContainer(ZipWriter resultStream, EpubBook book) throws IOException {
+        if (book.getModified() != null) {
+            resultStream.setTime(book.getModified().getTime());
+        }
+        addMimeType(resultStream);
+        String fileName = "META-INF/container.xml";
+        int level = compressionPolicy.getCompressionLevel(new Content("application/xml", fileName, (ContentSource) null));
+        addStringToZip(resultStream, fileName, "application/xml", MessageFormat.format(containerXML, contentFolder), level);
+    }
+
+    /**
+     * Writes the OPF and the navigation document of the content in the book
+     *
+     * @param resultStream
+     * @param book
+     * @throws IOException
+     */
+    void writePackageDocuments(ZipWriter resultStream, EpubBook book) throws IOException {
+        EpubWriteListener listener = writeListener;
+        long start = listener == null ? 0 : System.nanoTime();
+        TocCreator creator = getTocCreator();
+        Content toc = creator.createTocFromBook(book);
+        long tocNanos = listener == null ? 0 : System.nanoTime() - start;
+        List<Content> contents = new ArrayList<>(book.getContents().size() + 1);
+        contents.add(toc);
+        contents.addAll(book.getContents());
+        EpubBook writeBook = book.copyWithContents(contents);
+        start = listener == null ? 0 : System.nanoTime();
+        addOpf(resultStream, writeBook);
+        if (listener != null) {
+            listener.opfBuilt(book, System.nanoTime() - start);
+            start = System.nanoTime();
+        }
+        addToc(resultStream, writeBook, creator, toc);
+        if (listener != null) {
+            listener.tocBuilt(book, tocNanos + System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes the zip entry of one content object
+     *
+     * @param resultStream
+     * @param content
+     * @throws IOException
+     */
+    void writeContent(ZipWriter resultStream, Content content) throws IOException {
+        try (ContentEntries entries = new ContentEntries(this, resultStream, Collections.singletonList(content), null, false)) {
+            entries.writeAll();
+        }
+    }
+
+    /**
+     * Tells the listener and the flight recorder an entry is started
+     *
+     * @param resultStream
+     * @param fileName
+     * @param mediaType
+     * @return the start time or 0 if there is no listener
+     */
+    long entryStarted(ZipWriter resultStream, String fileName, String mediaType) {
+        EpubEvents.entryStarted(resultStream.getEvents());
+        EpubWriteListener listener = writeListener;
+        if (listener == null) {
+            return 0;
+        }
+        listener.entryStarted(fileName, mediaType);
+        return System.nanoTime();
+    }
+
+    /**
+     * Tells the listener and the flight recorder the last entry has been
+     * written
+     *
+     * @param resultStream
+     * @param fileName
+     * @param mediaType
+     * @param start
+     */
+    void entryWritten(ZipWriter resultStream, String fileName, String mediaType, long start) {
+        EpubEvents.entryFinished(resultStream.getEvents(), fileName, mediaType, resultStream.getLastEntrySize(), resultStream.getLastEntryCompressedSize());
+        EpubWriteListener listener = writeListener;
+        if (listener != null) {
+            listener.entryWritten(fileName, mediaType, resultStream.getLastEntrySize(),
+                    resultStream.getLastEntryCompressedSize(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Opens an EPUB on a stream that content is written to as it is added.
+     * The mime type, the container and the content already in the book are
+     * written straight away, added content as it is added and the OPF and
+     * the navigation document when the EpubStreamWriter is closed. The book
+     * only keeps the metadata of the content that has been written.
+     *
+     * @param book the EpubBook with the meta data
+     * @param out the stream to write the EPUB to
+     * @return the writer to add the content to
+     * @throws IOException if the EPUB could not be started
+     */
+    public EpubStreamWriter openEpubWriter(EpubBook book, OutputStream out) throws IOException {
+        return new EpubStreamWriter(this, book, out);
+    }
+
+    /**
+     * Opens a channel that produces the EPUB as it is read. Nothing is
+     * written up front and no thread is used, each read encodes just enough
+     * of the book to fill the buffer. The book must not be changed until the
+     * channel is closed.
+     *
+     * @param book the EpubBook
+     * @return the channel to read the EPUB from
+     */
+    public ReadableByteChannel openEpubChannel(EpubBook book) {
+        return new EpubReadableChannel(this, book);
+    }
+
+    /**
+     * Opens a stream that produces the EPUB as it is read, see
+     * openEpubChannel
+     *
+     * @param book the EpubBook
+     * @return the stream to read the EPUB from
+     */
+    public InputStream openEpubStream(EpubBook book) {
+        return Channels.newInputStream(openEpubChannel(book));
+    }
+
     /**
      * Adds the zip/EPUB mime type to the EPUB zip file
      *
      * @param resultStream
      * @throws IOException
      */
-    private void addMimeType(ZipOutputStream resultStream) throws IOException {
-        ZipEntry mimetypeZipEntry = new ZipEntry("mimetype");
-        mimetypeZipEntry.setMethod(ZipEntry.STORED);
-        byte[] mimetypeBytes = "application/epub+zip".getBytes("UTF-8");
-        mimetypeZipEntry.setSize(mimetypeBytes.length);
-        mimetypeZipEntry.setCrc(calculateCrc(mimetypeBytes));
-        resultStream.putNextEntry(mimetypeZipEntry);
-        resultStream.write(mimetypeBytes);
+    private void addMimeType(ZipWriter resultStream) throws IOException {
+        long start = entryStarted(resultStream, "mimetype", "text/plain");
+        resultStream.writeStoredEntry("mimetype", "application/epub+zip".getBytes("UTF-8"));
+        entryWritten(resultStream, "mimetype", "text/plain", start);
     }
 
     /**
-     * Calculates the CRC32 of data for the zip entry
+     * Adds the OPF file to the EPUB zip file. An OpfStreamCreator writes the
+     * OPF directly into the zip entry
      *
-     * @param data
-     * @return
+     * @param resultStream
+     * @param book
+     * @throws IOException
      */
-    private long calculateCrc(byte[] data) {
-        CRC32 crc = new CRC32();
-        crc.update(data);
-        return crc.getValue();
+    private void addOpf(ZipWriter resultStream, EpubBook book) throws IOException {
+        String fileName = contentFolder + "/" + getOpfFileName();
+        OpfCreator creator = opfCreator;
+        int level = compressionPolicy.getCompressionLevel(new Content(OPF_MEDIA_TYPE, fileName, (ContentSource) null));
+        if (!(creator instanceof OpfStreamCreator)) {
+            addStringToZip(resultStream, fileName, OPF_MEDIA_TYPE, creator.createOpfString(book), level);
+            return;
+        }
+        OpfStreamCreator streamCreator = (OpfStreamCreator) creator;
+        long start = entryStarted(resultStream, fileName, OPF_MEDIA_TYPE);
+        if (level == Deflater.NO_COMPRESSION) {
+            ByteArrayOutputStream opf = new ByteArrayOutputStream();
+            streamCreator.writeOpf(book, opf);
+            resultStream.writeStoredEntry(fileName, opf.toByteArray());
+        } else {
+            try (OutputStream out = resultStream.openDeflatedEntry(fileName, level)) {
+                streamCreator.writeOpf(book, out);
+            }
+        }
+        entryWritten(resultStream, fileName, OPF_MEDIA_TYPE, start);
+    }
+
+    /**
+     * Adds the navigation document to the EPUB zip file. A TocStreamCreator
+     * writes the navigation document directly into the zip entry, a STORED
+     * navigation document is rendered once into memory to get its CRC
+     *
+     * @param resultStream
+     * @param book
+     * @param creator the creator of the TOC content
+     * @param toc
+     * @throws IOException
+     */
+    private void addToc(ZipWriter resultStream, EpubBook book, TocCreator creator, Content toc) throws IOException {
+        String fileName = contentFolder + "/" + toc.getHref();
+        int level = compressionPolicy.getCompressionLevel(toc);
+        long start = entryStarted(resultStream, fileName, toc.getMediaType());
+        if (level == Deflater.NO_COMPRESSION) {
+            ByteArrayOutputStream nav = new ByteArrayOutputStream();
+            writeToc(book, creator, toc, nav);
+            resultStream.writeStoredEntry(fileName, nav.toByteArray());
+        } else {
+            try (OutputStream out = resultStream.openDeflatedEntry(fileName, level)) {
+                writeToc(book, creator, toc, out);
+            }
+        }
+        entryWritten(resultStream, fileName, toc.getMediaType(), start);
+    }
+
+    /**
+     * Writes the navigation document, the source of the TOC content is
+     * copied if the creator is not a TocStreamCreator
+     *
+     * @param book
+     * @param creator
+     * @param toc
+     * @param out
+     * @throws IOException
+     */
+    private static void writeToc(EpubBook book, TocCreator creator, Content toc, OutputStream out) throws IOException {
+        if (creator instanceof TocStreamCreator) {
+            ((TocStreamCreator) creator).writeToc(book, out);
+            return;
+        }
+        try (InputStream in = toc.getSource().openStream()) {
+            IOUtils.copy(in, out);
+        }
     }
 
     /**
@@ -120,27 +565,107 @@ public class EpubWriter {
      *
      * @param resultStream
      * @param fileName
+     * @param mediaType
      * @param content
+     * @param level the deflate level
      * @throws IOException
      */
-    private void addStringToZip(ZipOutputStream resultStream, String fileName, String content) throws IOException {
-        resultStream.putNextEntry(new ZipEntry(fileName));
-        Writer out = new OutputStreamWriter(resultStream, "UTF-8");
-        out.write(content);
-        out.flush();
+    private void addStringToZip(ZipWriter resultStream, String fileName, String mediaType, String content, int level) throws IOException {
+        long start = entryStarted(resultStream, fileName, mediaType);
+        if (level == Deflater.NO_COMPRESSION) {
+            resultStream.writeStoredEntry(fileName, content.getBytes("UTF-8"));
+        } else {
+            try (Writer out = new OutputStreamWriter(resultStream.openDeflatedEntry(fileName, level), "UTF-8")) {
+                out.write(content);
+            }
+        }
+        entryWritten(resultStream, fileName, mediaType, start);
     }
 
     /**
-     * Adds the content objects zip entries
+     * Compresses the content of a source. If the cache could keep the entry,
+     * see isCacheable, the cache is checked first using the hash of the
+     * content, and the compressed entry is added to it on a miss
      *
-     * @param resultStream
-     * @param contents
+     * @param source
+     * @param level
+     * @return
      * @throws IOException
      */
-    private void addContent(ZipOutputStream resultStream, List<Content> contents) throws IOException {
-        for (Content content : contents) {
-            resultStream.putNextEntry(new ZipEntry(contentFolder + "/" + content.getHref()));
-            resultStream.write(content.getContent());
+    CompressedEntry compress(ContentSource source, int level) throws IOException {
+        CompressedEntryCache cache = compressedEntryCache;
+        if (!isCacheable(cache, source)) {
+            try (InputStream in = source.openStream()) {
+                return CompressedEntry.deflate(in, level);
+            }
+        }
+        String key = ContentDigest.toHex(ContentDigest.digest(source)) + "-" + level;
+        CompressedEntry entry = cache.get(key);
+        if (entry == null) {
+            try (InputStream in = source.openStream()) {
+                entry = CompressedEntry.deflate(in, level);
+            }
+            cache.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Indicates whether the compressed entry of a source could be kept by the
+     * cache. The source must be repeatable to calculate its hash and its size
+     * must be known and within the entry size limit of the cache, larger
+     * content is streamed to the zip without buffering it for the cache
+     *
+     * @param cache the cache, may be null
+     * @param source the source
+     * @return true if the source is looked up in and added to the cache
+     */
+    static boolean isCacheable(CompressedEntryCache cache, ContentSource source) {
+        return cache != null && source.isRepeatable() && source.getSize() >= 0
+                && source.getSize() <= cache.getMaxEntrySize();
+    }
+
+    /**
+     * Reads a source to calculate its CRC
+     *
+     * @param source
+     * @param crc
+     * @return the size of the content
+     * @throws IOException
+     */
+    static long updateCrc(ContentSource source, CRC32 crc) throws IOException {
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = source.openStream()) {
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                crc.update(buffer, 0, length);
+                size += length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Makes the configuration of this writer immutable, all setters will
+     * throw an IllegalStateException afterwards
+     *
+     * @return this writer
+     */
+    public EpubWriter freeze() {
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * @return the frozen flag
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The EpubWriter configuration is frozen");
         }
     }
 
@@ -155,6 +680,7 @@ public class EpubWriter {
      * @param containerXML the CONTAINER_XML to set
      */
     public void setContainerXML(String containerXML) {
+        checkNotFrozen();
         this.containerXML = containerXML;
     }
 
@@ -169,6 +695,7 @@ public class EpubWriter {
      * @param contentFolder the CONTENT_FOLDER to set
      */
     public void setContentFolder(String contentFolder) {
+        checkNotFrozen();
         this.contentFolder = contentFolder;
     }
 
@@ -183,6 +710,7 @@ public class EpubWriter {
      * @param opfFileName the OPF_FILE_NAME to set
      */
     public void setOpfFileName(String opfFileName) {
+        checkNotFrozen();
         this.opfFileName = opfFileName;
     }
 
@@ -194,12 +722,120 @@ public class EpubWriter {
     }
 
     /**
+     * Sets the OpfCreator. An OpfStreamCreator writes the OPF directly into
+     * the zip, other creators build it as a String first
+     *
      * @param opfCreator the opfCreator to set
      */
     public void setOpfCreator(OpfCreator opfCreator) {
+        checkNotFrozen();
         this.opfCreator = opfCreator;
     }
 
+    /**
+     * @return the compressionPolicy
+     */
+    public CompressionPolicy getCompressionPolicy() {
+        return compressionPolicy;
+    }
+
+    /**
+     * @param compressionPolicy the compressionPolicy to set
+     */
+    public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+        checkNotFrozen();
+        this.compressionPolicy = compressionPolicy;
+    }
+
+    /**
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to deflate the content entries in parallel, for
+     * example a ForkJoinPool. Set to null to deflate on the writing thread
+     *
+     * @param executor the executor to set
+     */
+    public void setExecutor(Executor executor) {
+        checkNotFrozen();
+        this.executor = executor;
+    }
+
+    /**
+     * @return the maxPendingEntries
+     */
+    public int getMaxPendingEntries() {
+        return maxPendingEntries;
+    }
+
+    /**
+     * @param maxPendingEntries the maxPendingEntries to set
+     */
+    public void setMaxPendingEntries(int maxPendingEntries) {
+        checkNotFrozen();
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * @return the compressedEntryCache
+     */
+    public CompressedEntryCache getCompressedEntryCache() {
+        return compressedEntryCache;
+    }
+
+    /**
+     * Sets the cache of compressed entries. Content that is shared between
+     * books, like CSS and fonts, is then only compressed once. Set to null to
+     * compress every entry
+     *
+     * @param compressedEntryCache the compressedEntryCache to set
+     */
+    public void setCompressedEntryCache(CompressedEntryCache compressedEntryCache) {
+        checkNotFrozen();
+        this.compressedEntryCache = compressedEntryCache;
+    }
+
+    /**
+     * @return the writeListener
+     */
+    public EpubWriteListener getWriteListener() {
+        return writeListener;
+    }
+
+    /**
+     * Sets the listener told about the progress of each write, for example an
+     * EpubWriteHistogram. Set to null to take no timings
+     *
+     * @param writeListener the writeListener to set
+     */
+    public void setWriteListener(EpubWriteListener writeListener) {
+        checkNotFrozen();
+        this.writeListener = writeListener;
+    }
+
+    /**
+     * @return the validator
+     */
+    public EpubValidator getValidator() {
+        return validator;
+    }
+
+    /**
+     * Sets the validator run before each write. A book with problems is not
+     * written, an EpubValidationException with the report is thrown instead.
+     * Set to null to write books without validating them
+     *
+     * @param validator the validator to set
+     */
+    public void setValidator(EpubValidator validator) {
+        checkNotFrozen();
+        this.validator = validator;
+    }
+
     /**
      * @return the tocCreator
      */
@@ -208,9 +844,13 @@ public class EpubWriter {
     }
 
     /**
+     * Sets the TocCreator. A TocStreamCreator writes the navigation document
+     * directly into the zip, other creators build it in memory first
+     *
      * @param tocCreator the tocCreator to set
      */
     public void setTocCreator(TocCreator tocCreator) {
+        checkNotFrozen();
         this.tocCreator = tocCreator;
     }
 
@@ -0,0 +1,335 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.TocLink;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Builds a nested TOC from the h1 to h6 headings of the XHTML content in the
+ * TOC. The content is read with a StAX parser, in parallel if an executor is
+ * set, and the links are nested by heading level in the order of the book. A
+ * heading links to its id, or to the id of the element it is the first child
+ * of, or else to the content itself. Content without headings, that is not
+ * well-formed or that can only be read once gets a single link like the flat
+ * auto TOC. The builder can be shared between threads once it is configured.
+ *
+ * @author OpenCollab
+ */
+public class HeadingTocBuilder {
+
+    private static final String XHTML_MEDIA_TYPE = "application/xhtml+xml";
+
+    /**
+     * Configured once and then only used to create readers
+     */
+    private final XMLInputFactory inputFactory;
+
+    /**
+     * The executor used to read the content in parallel. If this is null the
+     * content is read on the calling thread
+     */
+    private volatile Executor executor;
+
+    /**
+     * The deepest heading level included
+     */
+    private volatile int maxLevel = 6;
+
+    /**
+     * Creates new instance of HeadingTocBuilder
+     */
+    public HeadingTocBuilder() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    }
+
+    /**
+     * Builds the nested links of the content in the TOC
+     *
+     * @param book the EpubBook
+     * @return the top level links
+     */
+    public List<TocLink> build(EpubBook book) {
+        List<Content> contents = new ArrayList<>();
+        List<FutureTask<List<Heading>>> tasks = new ArrayList<>();
+        Executor current = executor;
+        for (Content content : book.getContents()) {
+            if (content.isToc()) {
+                FutureTask<List<Heading>> task = headingsTask(content);
+                if (current == null) {
+                    task.run();
+                } else {
+                    current.execute(task);
+                }
+                contents.add(content);
+                tasks.add(task);
+            }
+        }
+        List<TocLink> links = new ArrayList<>();
+        List<TocLink> parents = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Content content = contents.get(i);
+            List<Heading> headings = getHeadings(content, tasks.get(i));
+            if (headings.isEmpty()) {
+                headings.add(new Heading(1, null, content.getId()));
+            }
+            for (Heading heading : headings) {
+                String href = heading.id == null ? content.getHref() : content.getHref() + "#" + heading.id;
+                TocLink link = new TocLink(href, heading.title, null);
+                while (!levels.isEmpty() && levels.get(levels.size() - 1) >= heading.level) {
+                    levels.remove(levels.size() - 1);
+                    parents.remove(parents.size() - 1);
+                }
+                if (parents.isEmpty()) {
+                    links.add(link);
+                } else {
+                    TocLink parent = parents.get(parents.size() - 1);
+                    if (parent.getTocChildLinks() == null) {
+                        parent.setTocChildLinks(new ArrayList<TocLink>());
+                    }
+                    parent.getTocChildLinks().add(link);
+                }
+                parents.add(link);
+                levels.add(heading.level);
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Creates the task reading the headings of a content object
+     *
+     * @param content
+     * @return
+     */
+    private FutureTask<List<Heading>> headingsTask(final Content content) {
+        return new FutureTask<>(new Callable<List<Heading>>() {
+            @Override
+            public List<Heading> call() throws Exception {
+                ContentSource source = content.getSource();
+                if (source == null || !source.isRepeatable() || !XHTML_MEDIA_TYPE.equals(content.getMediaType())) {
+                    return new ArrayList<>();
+                }
+                try (InputStream in = source.openStream()) {
+                    return readHeadings(in);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the headings of a content object, content that could not be
+     * read has no headings
+     *
+     * @param content
+     * @param task
+     * @return
+     */
+    private List<Heading> getHeadings(Content content, FutureTask<List<Heading>> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(new InterruptedIOException("Interrupted while reading the headings of " + content.getHref()));
+        } catch (ExecutionException ex) {
+            Logger.getLogger(HeadingTocBuilder.class.getName()).log(Level.WARNING,
+                    "Could not read the headings of " + content.getHref(), ex.getCause());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reads the headings from XHTML
+     *
+     * @param in
+     * @return
+     * @throws XMLStreamException
+     */
+    private List<Heading> readHeadings(InputStream in) throws XMLStreamException {
+        List<Heading> headings = new ArrayList<>();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            List<String> ids = new ArrayList<>();
+            boolean childSeen = true;
+            int level = 0;
+            int depth = 0;
+            String id = null;
+            StringBuilder title = new StringBuilder();
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamReader.START_ELEMENT:
+                        if (level > 0) {
+                            depth++;
+                            break;
+                        }
+                        String elementId = reader.getAttributeValue(null, "id");
+                        int headingLevel = headingLevel(reader.getLocalName());
+                        if (headingLevel > 0 && headingLevel <= maxLevel) {
+                            level = headingLevel;
+                            id = elementId;
+                            if (id == null && !childSeen && !ids.isEmpty()) {
+                                id = ids.get(ids.size() - 1);
+                            }
+                            title.setLength(0);
+                            depth = 0;
+                            break;
+                        }
+                        ids.add(elementId);
+                        childSeen = false;
+                        break;
+                    case XMLStreamReader.END_ELEMENT:
+                        if (level > 0) {
+                            if (depth == 0) {
+                                headings.add(new Heading(level, id, normalize(title)));
+                                level = 0;
+                                childSeen = true;
+                            } else {
+                                depth--;
+                            }
+                        } else if (!ids.isEmpty()) {
+                            ids.remove(ids.size() - 1);
+                            childSeen = true;
+                        }
+                        break;
+                    case XMLStreamReader.CHARACTERS:
+                    case XMLStreamReader.CDATA:
+                    case XMLStreamReader.SPACE:
+                        if (level > 0) {
+                            title.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamReader.ENTITY_REFERENCE:
+                        if (level > 0) {
+                            title.append(' ');
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return headings;
+    }
+
+    private static int headingLevel(String name) {
+        if (name.length() == 2 && (name.charAt(0) == 'h' || name.charAt(0) == 'H')
+                && name.charAt(1) >= '1' && name.charAt(1) <= '6') {
+            return name.charAt(1) - '0';
+        }
+        return 0;
+    }
+
+    /**
+     * Collapses white space
+     *
+     * @param text
+     * @return
+     */
+    private static String normalize(CharSequence text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00a0') {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to read the content in parallel, null reads the
+     * content on the calling thread
+     *
+     * @param executor the executor to set
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the maxLevel
+     */
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * Sets the deepest heading level included, 2 only includes h1 and h2
+     *
+     * @param maxLevel the maxLevel to set
+     */
+    public void setMaxLevel(int maxLevel) {
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * A heading found in the content
+     */
+    private static class Heading {
+
+        private final int level;
+        private final String id;
+        private final String title;
+
+        Heading(int level, String id, String title) {
+            this.level = level;
+            this.id = id;
+            this.title = title;
+        }
+    }
+}
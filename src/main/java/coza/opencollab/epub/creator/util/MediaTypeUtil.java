@@ -24,6 +24,7 @@
 package coza.opencollab.epub.creator.util;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
@@ -32,13 +33,15 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Used to map file extensions to Mime types from a properties file
+ * Used to map file extensions to Mime types from a properties file. The
+ * mappings are kept in an immutable table that is replaced as a whole when
+ * mappings are changed, so lookups need no locking and do not allocate.
  *
  * @author OpenCollab
  */
 public class MediaTypeUtil {
 
-    private static Map<String, String> mediaTypeMap = setMediaFromProperties();
+    private static volatile MediaTypeTable mediaTypeTable = new MediaTypeTable(setMediaFromProperties());
 
     /**
      * Created a map of media types for specific file extensions, read from the
@@ -75,7 +78,7 @@ public class MediaTypeUtil {
      * @return the mime type
      */
     public static String getMediaTypeFromExt(String ext) {
-        return mediaTypeMap.get(ext.toLowerCase());
+        return mediaTypeTable.get(ext, 0, ext.length());
     }
 
     /**
@@ -85,17 +88,246 @@ public class MediaTypeUtil {
      * @return the mime type
      */
     public static String getMediaTypeFromFilename(String fileName) {
-        String ext = fileName.substring(fileName.lastIndexOf('.') + 1);
-        return getMediaTypeFromExt(ext);
+        return mediaTypeTable.get(fileName, fileName.lastIndexOf('.') + 1, fileName.length());
     }
 
     /**
-     * Allows you to override the media type map
+     * Returns the media type for a file name, or if the extension is not known
+     * the media type recognized from the first bytes of the content
+     *
+     * @param fileName the full filename
+     * @param content the content or null
+     * @return the mime type or null if it is not known
+     */
+    public static String getMediaType(String fileName, byte[] content) {
+        String mediaType = getMediaTypeFromFilename(fileName);
+        if (mediaType == null && content != null) {
+            mediaType = sniffMediaType(content);
+        }
+        return mediaType;
+    }
+
+    /**
+     * Recognizes the media type from the first bytes of the content. Only
+     * the image, font, audio and document formats used in EPUBs are known
+     *
+     * @param content the content
+     * @return the mime type or null if it is not recognized
+     */
+    public static String sniffMediaType(byte[] content) {
+        if (startsWith(content, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(content, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(content, 0, 'G', 'I', 'F', '8')) {
+            return "image/gif";
+        }
+        if (startsWith(content, 0, 'O', 'T', 'T', 'O')) {
+            return "application/vnd.ms-opentype";
+        }
+        if (startsWith(content, 0, 0x00, 0x01, 0x00, 0x00)) {
+            return "application/x-truetype-font";
+        }
+        if (startsWith(content, 0, 'w', 'O', 'F', 'F')) {
+            return "application/font-woff";
+        }
+        if (startsWith(content, 0, 'I', 'D', '3')
+                || (content.length > 1 && (content[0] & 0xFF) == 0xFF && (content[1] & 0xE0) == 0xE0)) {
+            return "audio/mpeg";
+        }
+        if (startsWith(content, 4, 'f', 't', 'y', 'p')) {
+            return "audio/mp4";
+        }
+        if (startsWith(content, 0, 'O', 'g', 'g', 'S')) {
+            return "audio/ogg";
+        }
+        if (startsWith(content, 0, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        return sniffMarkup(content);
+    }
+
+    /**
+     * Returns the current mappings
+     *
+     * @return an unmodifiable copy of the mappings
+     */
+    public static Map<String, String> getMediaTypeMap() {
+        return mediaTypeTable.mappings;
+    }
+
+    /**
+     * Adds or replaces the media type of a file extension. The mappings are
+     * copied, lookups in progress are not affected
+     *
+     * @param ext the file extension
+     * @param mediaType the mime type
+     */
+    public static synchronized void registerMediaType(String ext, String mediaType) {
+        Map<String, String> mappings = new HashMap<>(mediaTypeTable.mappings);
+        mappings.put(MediaTypeTable.toLowerCase(ext), mediaType);
+        mediaTypeTable = new MediaTypeTable(mappings);
+    }
+
+    /**
+     * Allows you to override the media type map. The map is copied, later
+     * changes to it are not seen
      *
      * @param aMediaTypeMap the mediaTypeMap to set
      */
-    public static void setMediaTypeMap(Map<String, String> aMediaTypeMap) {
-        mediaTypeMap = aMediaTypeMap;
+    public static synchronized void setMediaTypeMap(Map<String, String> aMediaTypeMap) {
+        mediaTypeTable = new MediaTypeTable(aMediaTypeMap);
+    }
+
+    private static boolean startsWith(byte[] content, int offset, int... magic) {
+        if (content.length < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((content[offset + i] & 0xFF) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recognizes SVG and XHTML from the first element in the first 1024 bytes
+     *
+     * @param content
+     * @return
+     */
+    private static String sniffMarkup(byte[] content) {
+        int end = Math.min(content.length, 1024);
+        int i = startsWith(content, 0, 0xEF, 0xBB, 0xBF) ? 3 : 0;
+        while (i < end) {
+            while (i < end && content[i] != '<') {
+                i++;
+            }
+            i++;
+            if (i >= end) {
+                return null;
+            }
+            if (content[i] == '?' || content[i] == '!') {
+                if (matches(content, i + 1, "DOCTYPE html") || matches(content, i + 1, "doctype html")) {
+                    return "application/xhtml+xml";
+                }
+                continue;
+            }
+            if (matches(content, i, "svg")) {
+                return "image/svg+xml";
+            }
+            if (matches(content, i, "html")) {
+                return "application/xhtml+xml";
+            }
+            return null;
+        }
+        return null;
+    }
+
+    private static boolean matches(byte[] content, int offset, String text) {
+        if (content.length < offset + text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (content[offset + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Open addressing hash table of lower case extensions. It is never changed
+     * after it is created
+     */
+    private static final class MediaTypeTable {
+
+        private final String[] keys;
+        private final String[] values;
+        private final Map<String, String> mappings;
+
+        MediaTypeTable(Map<String, String> map) {
+            Map<String, String> lowerCase = new HashMap<>();
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    lowerCase.put(toLowerCase(entry.getKey()), entry.getValue());
+                }
+            }
+            int capacity = 16;
+            while (capacity < lowerCase.size() * 2) {
+                capacity <<= 1;
+            }
+            keys = new String[capacity];
+            values = new String[capacity];
+            for (Map.Entry<String, String> entry : lowerCase.entrySet()) {
+                String key = entry.getKey();
+                int i = hash(key, 0, key.length()) & (capacity - 1);
+                while (keys[i] != null) {
+                    i = (i + 1) & (capacity - 1);
+                }
+                keys[i] = key;
+                values[i] = entry.getValue();
+            }
+            mappings = Collections.unmodifiableMap(lowerCase);
+        }
+
+        /**
+         * Looks up part of a name ignoring case
+         *
+         * @param name
+         * @param start
+         * @param end
+         * @return
+         */
+        String get(CharSequence name, int start, int end) {
+            int mask = keys.length - 1;
+            for (int i = hash(name, start, end) & mask;; i = (i + 1) & mask) {
+                String key = keys[i];
+                if (key == null) {
+                    return null;
+                }
+                if (equalsLowerCase(key, name, start, end)) {
+                    return values[i];
+                }
+            }
+        }
+
+        static String toLowerCase(String text) {
+            char[] chars = new char[text.length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = lower(text.charAt(i));
+            }
+            return new String(chars);
+        }
+
+        private static boolean equalsLowerCase(String key, CharSequence name, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (key.charAt(i - start) != lower(name.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(CharSequence name, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + lower(name.charAt(i));
+            }
+            return h ^ (h >>> 16);
+        }
+
+        private static char lower(char c) {
+            if (c < 0x80) {
+                return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+            }
+            return Character.toLowerCase(c);
+        }
+    }
 }
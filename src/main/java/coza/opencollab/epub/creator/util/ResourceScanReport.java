@@ -0,0 +1,86 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.Content;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The result of a ResourceScanner scan. The report is immutable.
+ *
+ * @author OpenCollab
+ */
+public final class ResourceScanReport {
+
+    private final Map<String, Set<String>> missingResources;
+
+    private final List<Content> addedContents;
+
+    private final int contentsScanned;
+
+    /**
+     * Creates new instance of ResourceScanReport
+     *
+     * @param missingResources the missing hrefs with the hrefs of the content
+     * referencing them
+     * @param addedContents the content loaded from the resource root
+     * @param contentsScanned the number of content objects that were read
+     */
+    ResourceScanReport(Map<String, Set<String>> missingResources, List<Content> addedContents, int contentsScanned) {
+        this.missingResources = Collections.unmodifiableMap(new TreeMap<>(missingResources));
+        this.addedContents = Collections.unmodifiableList(new ArrayList<>(addedContents));
+        this.contentsScanned = contentsScanned;
+    }
+
+    /**
+     * @return true if all the referenced local resources are in the book
+     */
+    public boolean isComplete() {
+        return missingResources.isEmpty();
+    }
+
+    /**
+     * @return the hrefs of the referenced resources that are not in the book,
+     * with the hrefs of the content referencing each of them
+     */
+    public Map<String, Set<String>> getMissingResources() {
+        return missingResources;
+    }
+
+    /**
+     * @return the content added to the book from the resource root
+     */
+    public List<Content> getAddedContents() {
+        return addedContents;
+    }
+
+    /**
+     * @return the number of content objects that were read
+     */
+    public int getContentsScanned() {
+        return contentsScanned;
+    }
+}
@@ -0,0 +1,399 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Scans the XHTML and CSS content of a book for the resources it uses. The
+ * manifest properties of XHTML content (scripted, svg, mathml, switch and
+ * remote-resources) are added to the content properties, and local resources
+ * that are not in the book are reported. If a resource root is set the
+ * missing resources found in it are added to the book as lazy file content,
+ * and scanned in turn. The content is read in parallel if an executor is set.
+ * Content that can only be read once is not read.
+ *
+ * @author OpenCollab
+ */
+public class ResourceScanner {
+
+    private static final String XHTML_MEDIA_TYPE = "application/xhtml+xml";
+
+    private static final String CSS_MEDIA_TYPE = "text/css";
+
+    private static final String SVG_NAMESPACE = "http://www.w3.org/2000/svg";
+
+    private static final String MATHML_NAMESPACE = "http://www.w3.org/1998/Math/MathML";
+
+    private static final String OPS_NAMESPACE = "http://www.idpf.org/2007/ops";
+
+    private static final String XLINK_NAMESPACE = "http://www.w3.org/1999/xlink";
+
+    /**
+     * The attributes that embed a resource, links to other documents are not
+     * resources
+     */
+    private static final Set<String> RESOURCE_ATTRIBUTES = new HashSet<>();
+
+    static {
+        for (String attribute : new String[]{"img@src", "img@srcset", "link@href", "script@src", "audio@src",
+            "video@src", "video@poster", "source@src", "track@src", "embed@src", "object@data", "iframe@src",
+            "input@src", "image@href", "use@href", "feImage@href"}) {
+            RESOURCE_ATTRIBUTES.add(attribute);
+        }
+    }
+
+    /**
+     * Configured once and then only used to create readers
+     */
+    private final XMLInputFactory inputFactory;
+
+    /**
+     * The executor used to read the content in parallel. If this is null the
+     * content is read on the calling thread
+     */
+    private volatile Executor executor;
+
+    /**
+     * The directory missing resources are loaded from. If this is null they
+     * are only reported
+     */
+    private volatile Path resourceRoot;
+
+    /**
+     * Creates new instance of ResourceScanner
+     */
+    public ResourceScanner() {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, false);
+    }
+
+    /**
+     * Scans the book, adds the inferred properties to the content and loads
+     * the missing resources from the resource root if it is set
+     *
+     * @param book the EpubBook
+     * @return the report of the scan
+     */
+    public ResourceScanReport scan(EpubBook book) {
+        Set<String> hrefs = new HashSet<>();
+        for (Content content : book.getContents()) {
+            hrefs.add(content.getHref());
+        }
+        Map<String, Set<String>> missing = new HashMap<>();
+        List<Content> added = new ArrayList<>();
+        List<Content> round = new ArrayList<>(book.getContents());
+        int scanned = 0;
+        while (!round.isEmpty()) {
+            List<Content> contents = new ArrayList<>();
+            List<FutureTask<Scan>> tasks = new ArrayList<>();
+            Executor current = executor;
+            for (Content content : round) {
+                ContentSource source = content.getSource();
+                if (source != null && source.isRepeatable()
+                        && (XHTML_MEDIA_TYPE.equals(content.getMediaType()) || CSS_MEDIA_TYPE.equals(content.getMediaType()))) {
+                    FutureTask<Scan> task = scanTask(content);
+                    if (current == null) {
+                        task.run();
+                    } else {
+                        current.execute(task);
+                    }
+                    contents.add(content);
+                    tasks.add(task);
+                }
+            }
+            scanned += tasks.size();
+            round = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                Content content = contents.get(i);
+                Scan scan = getScan(content, tasks.get(i));
+                addProperties(content, scan.properties);
+                for (String resource : scan.resources) {
+                    if (hrefs.contains(resource)) {
+                        continue;
+                    }
+                    Content loaded = load(book, resource);
+                    if (loaded == null) {
+                        if (!missing.containsKey(resource)) {
+                            missing.put(resource, new TreeSet<String>());
+                        }
+                        missing.get(resource).add(content.getHref());
+                    } else {
+                        hrefs.add(resource);
+                        added.add(loaded);
+                        round.add(loaded);
+                    }
+                }
+            }
+        }
+        return new ResourceScanReport(missing, added, scanned);
+    }
+
+    /**
+     * Adds a resource from the resource root to the book
+     *
+     * @param book
+     * @param href
+     * @return the content added or null if the resource is not found
+     */
+    private Content load(EpubBook book, String href) {
+        Path root = resourceRoot;
+        if (root == null) {
+            return null;
+        }
+        Path file = root.resolve(href).normalize();
+        if (!file.startsWith(root.normalize()) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        return book.addContent(file, MediaTypeUtil.getMediaTypeFromFilename(href), href, false, false);
+    }
+
+    /**
+     * Adds properties to the properties of the content that it does not have
+     *
+     * @param content
+     * @param properties
+     */
+    private static void addProperties(Content content, Set<String> properties) {
+        if (properties.isEmpty()) {
+            return;
+        }
+        Set<String> merged = new LinkedHashSet<>();
+        if (content.getProperties() != null) {
+            for (String property : content.getProperties().trim().split("\\s+")) {
+                if (!property.isEmpty()) {
+                    merged.add(property);
+                }
+            }
+        }
+        if (merged.addAll(properties)) {
+            StringBuilder text = new StringBuilder();
+            for (String property : merged) {
+                if (text.length() > 0) {
+                    text.append(' ');
+                }
+                text.append(property);
+            }
+            content.setProperties(text.toString());
+        }
+    }
+
+    /**
+     * Creates the task scanning a content object
+     *
+     * @param content
+     * @return
+     */
+    private FutureTask<Scan> scanTask(final Content content) {
+        return new FutureTask<>(new Callable<Scan>() {
+            @Override
+            public Scan call() throws Exception {
+                Scan scan = new Scan();
+                try (InputStream in = content.getSource().openStream()) {
+                    if (CSS_MEDIA_TYPE.equals(content.getMediaType())) {
+                        scanCss(content.getHref(), IOUtils.toString(in, StandardCharsets.UTF_8.name()), scan);
+                    } else {
+                        scanXhtml(content.getHref(), in, scan);
+                    }
+                }
+                return scan;
+            }
+        });
+    }
+
+    /**
+     * Waits for the scan of a content object, content that could not be read
+     * has no properties or resources
+     *
+     * @param content
+     * @param task
+     * @return
+     */
+    private Scan getScan(Content content, FutureTask<Scan> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(new InterruptedIOException("Interrupted while scanning " + content.getHref()));
+        } catch (ExecutionException ex) {
+            Logger.getLogger(ResourceScanner.class.getName()).log(Level.WARNING,
+                    "Could not scan " + content.getHref(), ex.getCause());
+            return new Scan();
+        }
+    }
+
+    /**
+     * Reads the elements of XHTML for properties and resources
+     *
+     * @param href
+     * @param in
+     * @param scan
+     * @throws XMLStreamException
+     */
+    private void scanXhtml(String href, InputStream in, Scan scan) throws XMLStreamException {
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamReader.START_ELEMENT) {
+                    continue;
+                }
+                String name = reader.getLocalName();
+                String namespace = reader.getNamespaceURI();
+                if (SVG_NAMESPACE.equals(namespace)) {
+                    scan.properties.add("svg");
+                } else if (MATHML_NAMESPACE.equals(namespace)) {
+                    scan.properties.add("mathml");
+                } else if (OPS_NAMESPACE.equals(namespace) && "switch".equals(name)) {
+                    scan.properties.add("switch");
+                } else if ("script".equals(name) || "form".equals(name)) {
+                    scan.properties.add("scripted");
+                }
+                for (int i = 0; i < reader.getAttributeCount(); i++) {
+                    String attribute = reader.getAttributeLocalName(i);
+                    String attributeNamespace = reader.getAttributeNamespace(i);
+                    if (attribute.startsWith("on") && (attributeNamespace == null || attributeNamespace.isEmpty())) {
+                        scan.properties.add("scripted");
+                    }
+                    if ((attributeNamespace == null || attributeNamespace.isEmpty() || XLINK_NAMESPACE.equals(attributeNamespace))
+                            && RESOURCE_ATTRIBUTES.contains(name + "@" + attribute)) {
+                        if ("link".equals(name) && !isStylesheet(reader.getAttributeValue(null, "rel"))) {
+                            continue;
+                        }
+                        String value = reader.getAttributeValue(i);
+                        if ("srcset".equals(attribute)) {
+                            for (String candidate : value.split(",")) {
+                                addResource(href, candidate.trim().split("\\s+")[0], scan);
+                            }
+                        } else {
+                            addResource(href, value, scan);
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isStylesheet(String rel) {
+        return rel != null && (" " + rel.toLowerCase(Locale.ENGLISH) + " ").contains(" stylesheet ");
+    }
+
+    /**
+     * Finds the url() and @import references of CSS
+     *
+     * @param href
+     * @param css
+     * @param scan
+     */
+    private void scanCss(String href, String css, Scan scan) {
+        for (CssReferences.Reference reference : CssReferences.find(css)) {
+            addResource(href, reference.getValue(), scan);
+        }
+    }
+
+    private static void addResource(String href, String reference, Scan scan) {
+        if (reference.isEmpty() || reference.startsWith("#") || reference.startsWith("data:")) {
+            return;
+        }
+        if (EpubValidator.isRemote(reference)) {
+            scan.properties.add("remote-resources");
+            return;
+        }
+        String resolved = EpubValidator.resolve(href, reference);
+        if (resolved != null) {
+            scan.resources.add(resolved);
+        }
+    }
+
+    /**
+     * @return the executor
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor used to read the content in parallel, null reads the
+     * content on the calling thread
+     *
+     * @param executor the executor to set
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the resourceRoot
+     */
+    public Path getResourceRoot() {
+        return resourceRoot;
+    }
+
+    /**
+     * Sets the directory missing resources are loaded from, the href of a
+     * resource is its path relative to this directory. Set to null to only
+     * report missing resources
+     *
+     * @param resourceRoot the resourceRoot to set
+     */
+    public void setResourceRoot(Path resourceRoot) {
+        this.resourceRoot = resourceRoot;
+    }
+
+    /**
+     * The properties and resources found in a content object
+     */
+    private static class Scan {
+
+        private final Set<String> properties = new LinkedHashSet<>();
+        private final Set<String> resources = new LinkedHashSet<>();
+    }
+}
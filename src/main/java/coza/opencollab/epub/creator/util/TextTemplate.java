@@ -0,0 +1,301 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.ContentSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A template with {0}, {1}, ... placeholders that is parsed once and encodes
+ * straight to UTF-8. The result is the same as String.getBytes("UTF-8") of
+ * MessageFormat.format for templates without quotes or format types, the
+ * arguments are inserted as they are. A template is immutable and can be
+ * shared between threads.
+ *
+ * @author OpenCollab
+ */
+public final class TextTemplate {
+
+    /**
+     * The text between the placeholders, one more than the placeholders
+     */
+    private final String[] literals;
+
+    /**
+     * The argument index of each placeholder
+     */
+    private final int[] arguments;
+
+    private TextTemplate(String[] literals, int[] arguments) {
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Parses a template
+     *
+     * @param pattern the template with {n} placeholders
+     * @return the template
+     */
+    public static TextTemplate compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            int end = c == '{' ? pattern.indexOf('}', i) : -1;
+            if (end > i + 1 && isDigits(pattern, i + 1, end)) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                arguments.add(Integer.valueOf(pattern.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+        int[] indexes = new int[arguments.size()];
+        for (int a = 0; a < indexes.length; a++) {
+            indexes[a] = arguments.get(a);
+        }
+        return new TextTemplate(literals.toArray(new String[literals.size()]), indexes);
+    }
+
+    /**
+     * Returns the number of UTF-8 bytes of the filled in template
+     *
+     * @param args the arguments
+     * @return the number of bytes
+     */
+    public int encodedLength(CharSequence... args) {
+        Utf8Encoder counter = new Utf8Encoder(null, null);
+        try {
+            append(counter, args);
+            return counter.finish();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Fills in the template and encodes it to UTF-8 in an array of the exact
+     * size
+     *
+     * @param args the arguments
+     * @return the UTF-8 bytes
+     */
+    public byte[] encode(CharSequence... args) {
+        byte[] bytes = new byte[encodedLength(args)];
+        Utf8Encoder encoder = new Utf8Encoder(bytes, null);
+        try {
+            append(encoder, args);
+            encoder.finish();
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes;
+    }
+
+    /**
+     * Fills in the template and writes it as UTF-8 to a stream. Reader
+     * arguments are copied to the stream without reading them into memory,
+     * the readers are not closed
+     *
+     * @param out the stream to write to
+     * @param args the CharSequence, Reader or other arguments
+     * @throws IOException if an argument could not be read or the stream not
+     * written
+     */
+    public void write(OutputStream out, Object... args) throws IOException {
+        Utf8Encoder encoder = new Utf8Encoder(new byte[4096], out);
+        char[] chars = null;
+        for (int i = 0; i < arguments.length; i++) {
+            encoder.append(literals[i]);
+            int index = arguments[i];
+            if (index >= args.length) {
+                encoder.append("{" + index + "}");
+            } else if (args[index] instanceof Reader) {
+                if (chars == null) {
+                    chars = new char[4096];
+                }
+                Reader reader = (Reader) args[index];
+                int read;
+                while ((read = reader.read(chars)) != -1) {
+                    encoder.append(chars, read);
+                }
+            } else if (args[index] instanceof CharSequence) {
+                encoder.append((CharSequence) args[index]);
+            } else {
+                encoder.append(String.valueOf(args[index]));
+            }
+        }
+        encoder.append(literals[arguments.length]);
+        encoder.finish();
+    }
+
+    /**
+     * Returns a repeatable source that fills in the template when it is
+     * opened, only the arguments are kept in memory
+     *
+     * @param args the arguments
+     * @return the source
+     */
+    public ContentSource toSource(CharSequence... args) {
+        final CharSequence[] values = args.clone();
+        return new ContentSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return new ByteArrayInputStream(encode(values));
+            }
+
+            @Override
+            public long getSize() {
+                return encodedLength(values);
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return true;
+            }
+        };
+    }
+
+    private void append(Utf8Encoder encoder, CharSequence[] args) throws IOException {
+        for (int i = 0; i < arguments.length; i++) {
+            encoder.append(literals[i]);
+            int index = arguments[i];
+            if (index >= args.length) {
+                encoder.append("{" + index + "}");
+            } else {
+                encoder.append(args[index] == null ? "null" : args[index]);
+            }
+        }
+        encoder.append(literals[arguments.length]);
+    }
+
+    private static boolean isDigits(String pattern, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (pattern.charAt(i) < '0' || pattern.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes characters to UTF-8 the way String.getBytes does, unpaired
+     * surrogates become '?'. Without a buffer the bytes are only counted
+     */
+    private static final class Utf8Encoder {
+
+        private final byte[] buffer;
+        private final OutputStream out;
+        private int position;
+        private int count;
+        private char high;
+
+        Utf8Encoder(byte[] buffer, OutputStream out) {
+            this.buffer = buffer;
+            this.out = out;
+        }
+
+        void append(CharSequence text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                append(text.charAt(i));
+            }
+        }
+
+        void append(char[] chars, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                append(chars[i]);
+            }
+        }
+
+        void append(char c) throws IOException {
+            if (high != 0) {
+                char h = high;
+                high = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(h, c);
+                    put(0xF0 | (codePoint >> 18));
+                    put(0x80 | ((codePoint >> 12) & 0x3F));
+                    put(0x80 | ((codePoint >> 6) & 0x3F));
+                    put(0x80 | (codePoint & 0x3F));
+                    return;
+                }
+                put('?');
+            }
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                high = c;
+            } else if (Character.isLowSurrogate(c)) {
+                put('?');
+            } else {
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+
+        /**
+         * Writes a pending unpaired surrogate and flushes the buffer to the
+         * stream
+         *
+         * @return the number of bytes
+         * @throws IOException
+         */
+        int finish() throws IOException {
+            if (high != 0) {
+                high = 0;
+                put('?');
+            }
+            if (out != null && position > 0) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            return count;
+        }
+
+        private void put(int b) throws IOException {
+            count++;
+            if (buffer == null) {
+                return;
+            }
+            if (position == buffer.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            buffer[position++] = (byte) b;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal streaming XML writer that escapes and indents as it writes. Only the
+ * names of the open elements are kept, so memory grows with the nesting depth
+ * and not with the size of the document.
+ *
+ * @author OpenCollab
+ */
+public class XmlWriter {
+
+    private final Writer out;
+
+    /**
+     * The names of the open elements
+     */
+    private final List<String> openElements = new ArrayList<>();
+
+    /**
+     * Indicates whether the start tag of the last opened element still needs
+     * to be closed with '&gt;'
+     */
+    private boolean startTagOpen;
+
+    /**
+     * Indicates whether the current element contains text, in which case no
+     * indenting is done before its end tag
+     */
+    private boolean hasText;
+
+    /**
+     * Creates new instance of XmlWriter
+     *
+     * @param out the Writer to write the XML to
+     */
+    public XmlWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the UTF-8 XML declaration
+     *
+     * @return this writer
+     * @throws IOException if the declaration could not be written
+     */
+    public XmlWriter writeDeclaration() throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        return this;
+    }
+
+    /**
+     * Starts a new element, attributes can be added until text or another
+     * element is written
+     *
+     * @param name the element name
+     * @return this writer
+     * @throws IOException if the element could not be written
+     */
+    public XmlWriter startElement(String name) throws IOException {
+        closeStartTag();
+        newLine(openElements.size());
+        out.write('<');
+        out.write(name);
+        openElements.add(name);
+        startTagOpen = true;
+        hasText = false;
+        return this;
+    }
+
+    /**
+     * Adds an attribute to the element that has just been started. Null values
+     * are skipped
+     *
+     * @param name the attribute name
+     * @param value the attribute value
+     * @return this writer
+     * @throws IOException if the attribute could not be written
+     */
+    public XmlWriter attribute(String name, String value) throws IOException {
+        if (!startTagOpen) {
+            throw new IllegalStateException("Attributes can only be added directly after startElement");
+        }
+        if (value != null) {
+            out.write(' ');
+            out.write(name);
+            out.write("=\"");
+            escape(value, true);
+            out.write('"');
+        }
+        return this;
+    }
+
+    /**
+     * Writes escaped text in the current element. Null is written as an empty
+     * string
+     *
+     * @param text the text
+     * @return this writer
+     * @throws IOException if the text could not be written
+     */
+    public XmlWriter text(String text) throws IOException {
+        closeStartTag();
+        if (text != null) {
+            escape(text, false);
+        }
+        hasText = true;
+        return this;
+    }
+
+    /**
+     * Writes an element that only contains text
+     *
+     * @param name the element name
+     * @param text the text
+     * @return this writer
+     * @throws IOException if the element could not be written
+     */
+    public XmlWriter textElement(String name, String text) throws IOException {
+        return startElement(name).text(text).endElement();
+    }
+
+    /**
+     * Ends the current element
+     *
+     * @return this writer
+     * @throws IOException if the end tag could not be written
+     */
+    public XmlWriter endElement() throws IOException {
+        String name = openElements.remove(openElements.size() - 1);
+        if (startTagOpen) {
+            out.write(" />");
+            startTagOpen = false;
+        } else {
+            if (!hasText) {
+                newLine(openElements.size());
+            }
+            out.write("</");
+            out.write(name);
+            out.write('>');
+        }
+        hasText = false;
+        return this;
+    }
+
+    /**
+     * Ends all open elements and flushes the underlying Writer
+     *
+     * @throws IOException if the document could not be written
+     */
+    public void endDocument() throws IOException {
+        while (!openElements.isEmpty()) {
+            endElement();
+        }
+        out.write('\n');
+        out.flush();
+    }
+
+    private void closeStartTag() throws IOException {
+        if (startTagOpen) {
+            out.write('>');
+            startTagOpen = false;
+        }
+    }
+
+    private void newLine(int depth) throws IOException {
+        out.write('\n');
+        for (int i = 0; i < depth; i++) {
+            out.write('\t');
+        }
+    }
+
+    private void escape(String value, boolean attribute) throws IOException {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            String replacement;
+            switch (value.charAt(i)) {
+                case '&':
+                    replacement = "&amp;";
+                    break;
+                case '<':
+                    replacement = "&lt;";
+                    break;
+                case '>':
+                    replacement = "&gt;";
+                    break;
+                case '"':
+                    replacement = attribute ? "&quot;" : null;
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement != null) {
+                out.write(value, start, i - start);
+                out.write(replacement);
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+    }
+
+}
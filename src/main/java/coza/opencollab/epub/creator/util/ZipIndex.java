@@ -0,0 +1,267 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of an existing zip file so its entries can be
+ * copied to a new zip without being inflated. Only the central directory and
+ * the local header of copied entries are read.
+ *
+ * @author OpenCollab
+ */
+public class ZipIndex implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int END_SIZE = 22;
+
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    /**
+     * General purpose flag indicating the entry is encrypted
+     */
+    private static final int FLAG_ENCRYPTED = 0x01;
+
+    private static final long ZIP64_VALUE = 0xFFFFFFFFL;
+
+    /**
+     * The channel to the zip file
+     */
+    private final FileChannel channel;
+
+    /**
+     * The entries by name in the order of the central directory
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Opens a zip file and reads its central directory
+     *
+     * @param file the zip file
+     * @throws IOException if the file could not be read or is not a zip file
+     */
+    public ZipIndex(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Finds the end of central directory record and reads the entries
+     *
+     * @throws IOException
+     */
+    private void readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("No end of central directory found, this is not a zip file");
+        }
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & ZIP64_VALUE;
+        long directoryOffset = tail.getInt(end + 16) & ZIP64_VALUE;
+        if (directoryOffset + directorySize > size || directorySize > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid central directory, the zip file may be truncated or use zip64");
+        }
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directorySize || directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            Entry entry = new Entry();
+            entry.flags = directory.getShort(position + 8) & 0xFFFF;
+            entry.method = directory.getShort(position + 10) & 0xFFFF;
+            entry.crc = directory.getInt(position + 16) & ZIP64_VALUE;
+            entry.compressedSize = directory.getInt(position + 20) & ZIP64_VALUE;
+            entry.size = directory.getInt(position + 24) & ZIP64_VALUE;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            entry.localHeaderOffset = directory.getInt(position + 42) & ZIP64_VALUE;
+            byte[] name = new byte[nameLength];
+            ((Buffer) directory).position(position + CENTRAL_HEADER_SIZE);
+            directory.get(name);
+            entry.name = new String(name, StandardCharsets.UTF_8);
+            if ((entry.flags & FLAG_ENCRYPTED) == 0 && entry.compressedSize != ZIP64_VALUE
+                    && entry.size != ZIP64_VALUE && entry.localHeaderOffset != ZIP64_VALUE) {
+                entries.put(entry.name, entry);
+            }
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Reads a region of the file
+     *
+     * @param position
+     * @param length
+     * @return the little endian buffer with the data
+     * @throws IOException
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of zip file");
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    /**
+     * Returns the entry with the name. Encrypted and zip64 entries are not
+     * indexed.
+     *
+     * @param name the entry name
+     * @return the entry or null if it is not in the zip
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return the entries in the order of the central directory
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Returns the position of the compressed data of an entry, this reads
+     * the local header of the entry
+     *
+     * @param entry the entry
+     * @return the position in the zip file
+     * @throws IOException if the local header could not be read
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name);
+        }
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * @return the channel to the zip file
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Closes the zip file
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * An entry in the central directory
+     */
+    public static class Entry {
+
+        private String name;
+        private int method;
+        private int flags;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long localHeaderOffset;
+
+        /**
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the compression method
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        /**
+         * @return the crc
+         */
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * @return the compressedSize
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * @return the uncompressed size
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+}
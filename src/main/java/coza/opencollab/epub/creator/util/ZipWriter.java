@@ -0,0 +1,807 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip container directly to a channel. Unlike ZipOutputStream this
+ * allows STORED entries to be copied from a FileChannel with transferTo, so
+ * the file data does not have to pass through the Java heap.
+ *
+ * DEFLATED entries are always written with a data descriptor, the same layout
+ * ZipOutputStream uses. Like ZipOutputStream the zip64 extensions are only
+ * written when they are needed: for entries and offsets of 4GB and more and
+ * for more than 65534 entries, smaller zips are plain zip files.
+ *
+ * @author OpenCollab
+ */
+public class ZipWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+
+    private static final int END_SIGNATURE = 0x06054b50;
+
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    /**
+     * The header id of the zip64 extended information extra field
+     */
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    /**
+     * The version needed to extract zip64 entries
+     */
+    private static final int ZIP64_VERSION = 45;
+
+    /**
+     * General purpose flag indicating the sizes and CRC follow the data
+     */
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+
+    /**
+     * General purpose flag indicating the entry name is UTF-8 encoded
+     */
+    private static final int FLAG_UTF8 = 0x800;
+
+    /**
+     * The largest size or offset of a plain zip header, larger values and
+     * this value itself are written in the zip64 extra field
+     */
+    private static final long ZIP64_MAGIC_VALUE = 0xFFFFFFFFL;
+
+    /**
+     * The largest number of entries of the plain end of central directory
+     */
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    /**
+     * The size of the regions mapped when calculating the CRC of a file
+     */
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The channel the zip is written to
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The entries written so far, used to write the central directory
+     */
+    private final List<EntryRecord> entries = new ArrayList<>();
+
+    /**
+     * Buffer used to write headers
+     */
+    private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The number of bytes written to the channel
+     */
+    private long written;
+
+    /**
+     * The MS-DOS time and date set on the entries that follow
+     */
+    private int dosTime;
+
+    /**
+     * The entry currently being written with an entry stream
+     */
+    private OutputStream openEntry;
+
+    /**
+     * The flight recorder events of the write, see EpubEvents.writeStarted
+     */
+    private Object events;
+
+    private boolean closed;
+
+    /**
+     * Creates a ZipWriter that writes to a channel
+     *
+     * @param channel the channel to write to
+     */
+    public ZipWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        setTime(System.currentTimeMillis());
+    }
+
+    /**
+     * Creates a ZipWriter that writes to an OutputStream. If the stream is a
+     * FileOutputStream its channel is used so file entries can be transferred
+     * without copying.
+     *
+     * @param out the stream to write to
+     */
+    public ZipWriter(OutputStream out) {
+        this(out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out));
+    }
+
+    /**
+     * Sets the modification time written for the entries that follow
+     *
+     * @param time the time in milliseconds since the epoch
+     */
+    public final void setTime(long time) {
+        this.dosTime = toDosTime(time);
+    }
+
+    /**
+     * Writes a STORED entry from a byte array
+     *
+     * @param name the entry name
+     * @param data the entry data
+     * @throws IOException if the entry could not be written
+     */
+    public void writeStoredEntry(String name, byte[] data) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeLocalHeader(name, ZipEntry.STORED, 0, crc.getValue(), data.length, data.length);
+        writeFully(ByteBuffer.wrap(data));
+        finishEntry(data.length);
+    }
+
+    /**
+     * Writes a STORED entry from a file. The CRC is calculated over a mapping
+     * of the file, the data is then transferred straight to the output
+     * channel.
+     *
+     * @param name the entry name
+     * @param file the file channel to read from
+     * @throws IOException if the entry could not be written
+     */
+    public void writeStoredEntry(String name, FileChannel file) throws IOException {
+        long size = file.size();
+        long crc = calculateCrc(file, size);
+        writeLocalHeader(name, ZipEntry.STORED, 0, crc, size, size);
+        long position = 0;
+        while (position < size) {
+            long count = file.transferTo(position, size - position, channel);
+            if (count <= 0) {
+                throw new ZipException("Could not transfer " + name + " to the zip, the file may have been truncated");
+            }
+            position += count;
+        }
+        written += size;
+        finishEntry(size);
+    }
+
+    /**
+     * Writes a STORED entry from a buffer, usually a direct or mapped buffer.
+     * The data between the position and the limit is written straight to the
+     * channel, the position of the buffer is not changed.
+     *
+     * @param name the entry name
+     * @param data the entry data
+     * @throws IOException if the entry could not be written
+     */
+    public void writeStoredEntry(String name, ByteBuffer data) throws IOException {
+        CRC32 crc = new CRC32();
+        updateCrc(crc, data.duplicate(), new byte[BUFFER_SIZE]);
+        long size = data.remaining();
+        writeLocalHeader(name, ZipEntry.STORED, 0, crc.getValue(), size, size);
+        writeFully(data.duplicate());
+        finishEntry(size);
+    }
+
+    /**
+     * Opens a STORED entry whose size and CRC are known up front. The returned
+     * stream must be closed before the next entry is written.
+     *
+     * @param name the entry name
+     * @param size the size of the data
+     * @param crc the CRC32 of the data
+     * @return the stream to write the entry data to
+     * @throws IOException if the entry header could not be written
+     */
+    public OutputStream openStoredEntry(String name, long size, long crc) throws IOException {
+        writeLocalHeader(name, ZipEntry.STORED, 0, crc, size, size);
+        openEntry = new StoredEntryStream(name, size, crc);
+        return openEntry;
+    }
+
+    /**
+     * Opens a DEFLATED entry. The returned stream must be closed before the
+     * next entry is written.
+     *
+     * @param name the entry name
+     * @param level the deflate level
+     * @return the stream to write the uncompressed entry data to
+     * @throws IOException if the entry header could not be written
+     */
+    public OutputStream openDeflatedEntry(String name, int level) throws IOException {
+        writeLocalHeader(name, ZipEntry.DEFLATED, FLAG_DATA_DESCRIPTOR, 0, 0, 0);
+        openEntry = new DeflatedEntryStream(level);
+        return openEntry;
+    }
+
+    /**
+     * Writes an entry that has already been compressed. DEFLATED entries are
+     * written with a data descriptor so the result is identical to writing the
+     * same data with openDeflatedEntry.
+     *
+     * @param name the entry name
+     * @param entry the compressed entry
+     * @throws IOException if the entry could not be written
+     */
+    public void writeCompressedEntry(String name, CompressedEntry entry) throws IOException {
+        writeCompressedHeader(name, entry);
+        writeFully(ByteBuffer.wrap(entry.data()));
+        finishEntry(entry.getCompressedSize());
+    }
+
+    /**
+     * Opens an entry that has already been compressed, so the compressed
+     * data can be written in pieces. The returned stream must be closed
+     * before the next entry is written.
+     *
+     * @param name the entry name
+     * @param entry the compressed entry
+     * @return the stream to write the compressed data to
+     * @throws IOException if the entry header could not be written
+     */
+    public OutputStream openCompressedEntry(String name, CompressedEntry entry) throws IOException {
+        writeCompressedHeader(name, entry);
+        openEntry = new CompressedEntryStream(name, entry.getCompressedSize());
+        return openEntry;
+    }
+
+    /**
+     * Copies an entry from another zip file without inflating it. The data is
+     * transferred straight from the file channel, DEFLATED entries are
+     * written with a data descriptor like all the other DEFLATED entries.
+     *
+     * @param name the entry name
+     * @param method the compression method of the data
+     * @param crc the CRC32 of the uncompressed data
+     * @param size the uncompressed size
+     * @param file the channel to the zip file to copy from
+     * @param position the position of the entry data in the file
+     * @param compressedSize the size of the entry data in the file
+     * @throws IOException if the entry could not be copied
+     */
+    public void writeRawEntry(String name, int method, long crc, long size,
+            FileChannel file, long position, long compressedSize) throws IOException {
+        if (method == ZipEntry.STORED) {
+            writeLocalHeader(name, ZipEntry.STORED, 0, crc, size, size);
+        } else {
+            writeLocalHeader(name, method, FLAG_DATA_DESCRIPTOR, 0, 0, 0);
+            EntryRecord record = entries.get(entries.size() - 1);
+            record.crc = crc;
+            record.size = size;
+        }
+        long count = 0;
+        while (count < compressedSize) {
+            long transferred = file.transferTo(position + count, compressedSize - count, channel);
+            if (transferred <= 0) {
+                throw new ZipException("Could not copy " + name + " to the zip, the source zip may have been truncated");
+            }
+            count += transferred;
+        }
+        written += compressedSize;
+        finishEntry(compressedSize);
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long getBytesWritten() {
+        return written;
+    }
+
+    /**
+     * @return the flight recorder events of the write
+     */
+    Object getEvents() {
+        return events;
+    }
+
+    /**
+     * @param events the flight recorder events of the write to set
+     */
+    void setEvents(Object events) {
+        this.events = events;
+    }
+
+    /**
+     * @return the uncompressed size of the last entry written
+     */
+    long getLastEntrySize() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).size;
+    }
+
+    /**
+     * @return the compressed size of the last entry written
+     */
+    long getLastEntryCompressedSize() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).compressedSize;
+    }
+
+    /**
+     * Finishes the zip by writing the central directory and closes the
+     * channel
+     *
+     * @throws IOException if the central directory could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Closes the channel without writing the central directory, used when
+     * writing the zip failed
+     *
+     * @throws IOException if the channel could not be closed
+     */
+    void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Writes the central directory
+     *
+     * @throws IOException
+     */
+    private void finish() throws IOException {
+        if (openEntry != null) {
+            throw new ZipException("The last zip entry has not been closed");
+        }
+        long start = written;
+        for (EntryRecord entry : entries) {
+            writeCentralHeader(entry);
+        }
+        long size = written - start;
+        int count = entries.size();
+        if (count >= ZIP64_MAGIC_COUNT || size >= ZIP64_MAGIC_VALUE || start >= ZIP64_MAGIC_VALUE) {
+            long end = written;
+            ((Buffer) header).clear();
+            header.putInt(ZIP64_END_SIGNATURE);
+            header.putLong(44);
+            header.putShort((short) ZIP64_VERSION);
+            header.putShort((short) ZIP64_VERSION);
+            header.putInt(0);
+            header.putInt(0);
+            header.putLong(count);
+            header.putLong(count);
+            header.putLong(size);
+            header.putLong(start);
+            header.putInt(ZIP64_LOCATOR_SIGNATURE);
+            header.putInt(0);
+            header.putLong(end);
+            header.putInt(1);
+            writeHeader();
+        }
+        ((Buffer) header).clear();
+        header.putInt(END_SIGNATURE);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        header.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        header.putInt((int) Math.min(size, ZIP64_MAGIC_VALUE));
+        header.putInt((int) Math.min(start, ZIP64_MAGIC_VALUE));
+        header.putShort((short) 0);
+        writeHeader();
+    }
+
+    /**
+     * Writes the central directory header of an entry. Sizes and the offset
+     * that do not fit are written in a zip64 extra field
+     *
+     * @param entry
+     * @throws IOException
+     */
+    private void writeCentralHeader(EntryRecord entry) throws IOException {
+        boolean zip64Size = entry.size >= ZIP64_MAGIC_VALUE;
+        boolean zip64CompressedSize = entry.compressedSize >= ZIP64_MAGIC_VALUE;
+        boolean zip64Offset = entry.offset >= ZIP64_MAGIC_VALUE;
+        int extraLength = (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+        int version = extraLength > 0 ? ZIP64_VERSION : versionNeeded(entry.method);
+        ((Buffer) header).clear();
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) (extraLength > 0 ? ZIP64_VERSION : 20));
+        header.putShort((short) version);
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(entry.time);
+        header.putInt((int) entry.crc);
+        header.putInt((int) (zip64CompressedSize ? ZIP64_MAGIC_VALUE : entry.compressedSize));
+        header.putInt((int) (zip64Size ? ZIP64_MAGIC_VALUE : entry.size));
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (extraLength > 0 ? extraLength + 4 : 0));
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putInt(0);
+        header.putInt((int) (zip64Offset ? ZIP64_MAGIC_VALUE : entry.offset));
+        writeHeader();
+        writeFully(ByteBuffer.wrap(entry.name));
+        if (extraLength > 0) {
+            ((Buffer) header).clear();
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) extraLength);
+            if (zip64Size) {
+                header.putLong(entry.size);
+            }
+            if (zip64CompressedSize) {
+                header.putLong(entry.compressedSize);
+            }
+            if (zip64Offset) {
+                header.putLong(entry.offset);
+            }
+            writeHeader();
+        }
+    }
+
+    /**
+     * Writes the local file header of an entry that has already been
+     * compressed
+     *
+     * @param name
+     * @param entry
+     * @throws IOException
+     */
+    private void writeCompressedHeader(String name, CompressedEntry entry) throws IOException {
+        if (entry.getMethod() == ZipEntry.STORED) {
+            writeLocalHeader(name, ZipEntry.STORED, 0, entry.getCrc(), entry.getSize(), entry.getSize());
+        } else {
+            writeLocalHeader(name, ZipEntry.DEFLATED, FLAG_DATA_DESCRIPTOR, 0, 0, 0);
+            EntryRecord record = entries.get(entries.size() - 1);
+            record.crc = entry.getCrc();
+            record.size = entry.getSize();
+        }
+    }
+
+    /**
+     * Writes the local file header of a new entry. STORED entries of 4GB and
+     * more get their sizes in a zip64 extra field, the sizes of DEFLATED
+     * entries follow in the data descriptor
+     *
+     * @param name
+     * @param method
+     * @param flags
+     * @param crc
+     * @param compressedSize
+     * @param size
+     * @throws IOException
+     */
+    private void writeLocalHeader(String name, int method, int flags, long crc, long compressedSize, long size) throws IOException {
+        if (closed) {
+            throw new ZipException("The zip has been closed");
+        }
+        if (openEntry != null) {
+            throw new ZipException("The previous zip entry has not been closed");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        EntryRecord entry = new EntryRecord();
+        entry.name = nameBytes;
+        entry.method = method;
+        entry.flags = flags | FLAG_UTF8;
+        entry.crc = crc;
+        entry.compressedSize = compressedSize;
+        entry.size = size;
+        entry.offset = written;
+        entry.time = dosTime;
+        entries.add(entry);
+        boolean zip64 = size >= ZIP64_MAGIC_VALUE || compressedSize >= ZIP64_MAGIC_VALUE;
+        ((Buffer) header).clear();
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) (zip64 ? ZIP64_VERSION : versionNeeded(method)));
+        header.putShort((short) entry.flags);
+        header.putShort((short) method);
+        header.putInt(entry.time);
+        header.putInt((int) crc);
+        header.putInt((int) (zip64 ? ZIP64_MAGIC_VALUE : compressedSize));
+        header.putInt((int) (zip64 ? ZIP64_MAGIC_VALUE : size));
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) (zip64 ? 20 : 0));
+        writeHeader();
+        writeFully(ByteBuffer.wrap(nameBytes));
+        if (zip64) {
+            ((Buffer) header).clear();
+            header.putShort((short) ZIP64_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(size);
+            header.putLong(compressedSize);
+            writeHeader();
+        }
+    }
+
+    /**
+     * Completes the current entry. DEFLATED entries get their data
+     * descriptor written, with 8 byte sizes if a size is 4GB or more.
+     *
+     * @param compressedSize
+     * @throws IOException
+     */
+    private void finishEntry(long compressedSize) throws IOException {
+        EntryRecord entry = entries.get(entries.size() - 1);
+        entry.compressedSize = compressedSize;
+        if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0) {
+            ((Buffer) header).clear();
+            header.putInt(DATA_DESCRIPTOR_SIGNATURE);
+            header.putInt((int) entry.crc);
+            if (entry.size >= ZIP64_MAGIC_VALUE || entry.compressedSize >= ZIP64_MAGIC_VALUE) {
+                header.putLong(entry.compressedSize);
+                header.putLong(entry.size);
+            } else {
+                header.putInt((int) entry.compressedSize);
+                header.putInt((int) entry.size);
+            }
+            writeHeader();
+        }
+        openEntry = null;
+    }
+
+    private void writeHeader() throws IOException {
+        ((Buffer) header).flip();
+        writeFully(header);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        written += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Calculates the CRC32 of a file in a single pass over a mapping of the
+     * file
+     *
+     * @param file
+     * @param size
+     * @return
+     * @throws IOException
+     */
+    private long calculateCrc(FileChannel file, long size) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (long position = 0; position < size; position += MAP_SIZE) {
+            updateCrc(crc, file.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position)), buffer);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Updates the CRC with the remaining data of a buffer, the data is copied
+     * through a small heap buffer
+     *
+     * @param crc
+     * @param data
+     * @param buffer
+     */
+    private static void updateCrc(CRC32 crc, ByteBuffer data, byte[] buffer) {
+        while (data.hasRemaining()) {
+            int length = Math.min(buffer.length, data.remaining());
+            data.get(buffer, 0, length);
+            crc.update(buffer, 0, length);
+        }
+    }
+
+    private static int versionNeeded(int method) {
+        return method == ZipEntry.STORED ? 10 : 20;
+    }
+
+    /**
+     * Converts Java time to the MS-DOS date and time format
+     *
+     * @param time
+     * @return
+     */
+    private static int toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * The central directory data of an entry
+     */
+    private static class EntryRecord {
+
+        private byte[] name;
+        private int method;
+        private int flags;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long offset;
+        private int time;
+    }
+
+    /**
+     * Stream for a STORED entry, checks the written data against the size and
+     * CRC in the header
+     */
+    private class StoredEntryStream extends OutputStream {
+
+        private final String name;
+        private final long size;
+        private final long expectedCrc;
+        private final CRC32 crc = new CRC32();
+        private long count;
+
+        StoredEntryStream(String name, long size, long expectedCrc) {
+            this.name = name;
+            this.size = size;
+            this.expectedCrc = expectedCrc;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            crc.update(b, off, len);
+            count += len;
+            writeFully(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (openEntry != this) {
+                return;
+            }
+            if (count != size || crc.getValue() != expectedCrc) {
+                throw new ZipException("The data written for " + name + " does not match the size and CRC of the entry");
+            }
+            finishEntry(count);
+        }
+    }
+
+    /**
+     * Stream for a DEFLATED entry, the data is compressed as it is written
+     */
+    private class DeflatedEntryStream extends OutputStream {
+
+        private final DeflatingOutputStream deflater;
+
+        DeflatedEntryStream(int level) {
+            this.deflater = new DeflatingOutputStream(new ChannelOutputStream(), level);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            deflater.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            deflater.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (openEntry != this) {
+                return;
+            }
+            deflater.finish();
+            EntryRecord entry = entries.get(entries.size() - 1);
+            entry.crc = deflater.getCrc();
+            entry.size = deflater.getSize();
+            finishEntry(deflater.getCompressedSize());
+        }
+    }
+
+    /**
+     * Stream for the data of an entry that has already been compressed,
+     * checks the size of the written data
+     */
+    private class CompressedEntryStream extends OutputStream {
+
+        private final String name;
+        private final long compressedSize;
+        private long count;
+
+        CompressedEntryStream(String name, long compressedSize) {
+            this.name = name;
+            this.compressedSize = compressedSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+            writeFully(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (openEntry != this) {
+                return;
+            }
+            if (count != compressedSize) {
+                throw new ZipException("The data written for " + name + " does not match the compressed size of the entry");
+            }
+            finishEntry(count);
+        }
+    }
+
+    /**
+     * Writes straight to the channel
+     */
+    private class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeFully(ByteBuffer.wrap(b, off, len));
+        }
+    }
+
+}
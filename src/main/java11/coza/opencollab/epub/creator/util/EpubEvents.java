@@ -0,0 +1,237 @@
+/* Copyright 2014 OpenCollab.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package coza.opencollab.epub.creator.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Records the Java Flight Recorder events of EPUB generation. This is the
+ * Java 11 version of the class in the multi-release jar. The events that
+ * are in progress are kept with the write, so a write may continue on
+ * another thread, the events are only created when they are enabled in the
+ * recording.
+ *
+ * @author OpenCollab
+ */
+public final class EpubEvents {
+
+    private static final EventType WRITE_TYPE = EventType.getEventType(EpubWriteEvent.class);
+
+    private static final EventType ENTRY_TYPE = EventType.getEventType(EpubEntryWriteEvent.class);
+
+    private static final EventType OPF_TYPE = EventType.getEventType(OpfBuildEvent.class);
+
+    private static final EventType TOC_TYPE = EventType.getEventType(TocBuildEvent.class);
+
+    private EpubEvents() {
+    }
+
+    public static Object writeStarted(String bookId) {
+        if (!WRITE_TYPE.isEnabled() && !ENTRY_TYPE.isEnabled()) {
+            return null;
+        }
+        WriteEvents events = new WriteEvents();
+        events.bookId = bookId;
+        if (WRITE_TYPE.isEnabled()) {
+            events.write = new EpubWriteEvent();
+            events.write.begin();
+        }
+        return events;
+    }
+
+    public static void writeFinished(Object write, long bytesWritten, boolean success) {
+        if (write == null) {
+            return;
+        }
+        WriteEvents events = (WriteEvents) write;
+        EpubWriteEvent event = events.write;
+        events.write = null;
+        events.entry = null;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.bookId = events.bookId;
+                event.bytesWritten = bytesWritten;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    public static void entryStarted(Object write) {
+        if (write != null && ENTRY_TYPE.isEnabled()) {
+            EpubEntryWriteEvent event = new EpubEntryWriteEvent();
+            ((WriteEvents) write).entry = event;
+            event.begin();
+        }
+    }
+
+    public static void entryFinished(Object write, String href, String mediaType, long size, long compressedSize) {
+        if (write == null) {
+            return;
+        }
+        WriteEvents events = (WriteEvents) write;
+        EpubEntryWriteEvent event = events.entry;
+        events.entry = null;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.bookId = events.bookId;
+                event.href = href;
+                event.mediaType = mediaType;
+                event.size = size;
+                event.compressedSize = compressedSize;
+                event.compressionRatio = size == 0 ? 1 : (double) compressedSize / size;
+                event.commit();
+            }
+        }
+    }
+
+    public static Object opfStarted(String bookId) {
+        if (!OPF_TYPE.isEnabled()) {
+            return null;
+        }
+        OpfBuildEvent event = new OpfBuildEvent();
+        event.bookId = bookId;
+        event.begin();
+        return event;
+    }
+
+    public static void opfFinished(Object opf, int manifestItems) {
+        if (opf == null) {
+            return;
+        }
+        OpfBuildEvent event = (OpfBuildEvent) opf;
+        event.end();
+        if (event.shouldCommit()) {
+            event.manifestItems = manifestItems;
+            event.commit();
+        }
+    }
+
+    public static Object tocStarted(String bookId) {
+        if (!TOC_TYPE.isEnabled()) {
+            return null;
+        }
+        TocBuildEvent event = new TocBuildEvent();
+        event.bookId = bookId;
+        event.begin();
+        return event;
+    }
+
+    public static void tocFinished(Object toc, int links) {
+        if (toc == null) {
+            return;
+        }
+        TocBuildEvent event = (TocBuildEvent) toc;
+        event.end();
+        if (event.shouldCommit()) {
+            event.links = links;
+            event.commit();
+        }
+    }
+
+    /**
+     * The events in progress of a write
+     */
+    private static class WriteEvents {
+
+        private String bookId;
+        private EpubWriteEvent write;
+        private EpubEntryWriteEvent entry;
+    }
+
+    @Name("coza.opencollab.epub.EpubWrite")
+    @Label("EPUB Write")
+    @Category("EPUB")
+    @Description("Writing a whole EPUB book")
+    static class EpubWriteEvent extends Event {
+
+        @Label("Book Id")
+        String bookId;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Success")
+        boolean success;
+    }
+
+    @Name("coza.opencollab.epub.EpubEntryWrite")
+    @Label("EPUB Entry Write")
+    @Category("EPUB")
+    @Description("Writing one zip entry of an EPUB book")
+    static class EpubEntryWriteEvent extends Event {
+
+        @Label("Book Id")
+        String bookId;
+
+        @Label("Href")
+        String href;
+
+        @Label("Media Type")
+        String mediaType;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        @Label("Compressed Size")
+        @DataAmount
+        long compressedSize;
+
+        @Label("Compression Ratio")
+        double compressionRatio;
+    }
+
+    @Name("coza.opencollab.epub.OpfBuild")
+    @Label("OPF Build")
+    @Category("EPUB")
+    @Description("Building the OPF package document of an EPUB book")
+    static class OpfBuildEvent extends Event {
+
+        @Label("Book Id")
+        String bookId;
+
+        @Label("Manifest Items")
+        int manifestItems;
+    }
+
+    @Name("coza.opencollab.epub.TocBuild")
+    @Label("TOC Build")
+    @Category("EPUB")
+    @Description("Building the navigation document of an EPUB book")
+    static class TocBuildEvent extends Event {
+
+        @Label("Book Id")
+        String bookId;
+
+        @Label("Links")
+        int links;
+    }
+}
@@ -14,8 +14,10 @@ import org.junit.Test;
 public class EpubCreatorTest {
 
     @Test
-    public void testEpubCreate() {
-        try (FileOutputStream file = new FileOutputStream(new File("test.epub"))) {
+    public void testEpubCreate() throws Exception {
+        File epub = File.createTempFile("test", ".epub");
+        epub.deleteOnExit();
+        try (FileOutputStream file = new FileOutputStream(epub)) {
             EpubBook book = new EpubBook("en", "Samuel .-__Id1", "Samuel Test Book", "Samuel Holtzkampf");
 
             book.addContent(this.getClass().getResourceAsStream("/epub30-overview.xhtml"),
@@ -36,6 +38,8 @@ public class EpubCreatorTest {
         } catch (Exception ex) {
             System.out.println(ex);
             Assert.assertEquals("test", "test1");
+        } finally {
+            epub.delete();
         }
     }
 }
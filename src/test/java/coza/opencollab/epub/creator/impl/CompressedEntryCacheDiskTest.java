@@ -0,0 +1,52 @@
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.util.CompressedEntry;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class CompressedEntryCacheDiskTest {
+
+    @Test
+    public void testDamagedEntry() throws Exception {
+        Path directory = Files.createTempDirectory("entry-cache");
+        try {
+            byte[] text = new byte[4096];
+            Arrays.fill(text, (byte) 'a');
+            CompressedEntry entry = CompressedEntry.deflate(new ByteArrayInputStream(text), Deflater.BEST_SPEED);
+            Assert.assertTrue(entry.verify());
+            CompressedEntryCacheDisk cache = new CompressedEntryCacheDisk(directory, 1024 * 1024);
+            cache.put("text", entry);
+            cache.put("stored", CompressedEntry.store(text));
+            CompressedEntry cached = cache.get("text");
+            Assert.assertEquals(entry.getCrc(), cached.getCrc());
+            Assert.assertTrue(Arrays.equals(entry.getData(), cached.getData()));
+            cached.getData()[0] ^= 0x55;
+            Assert.assertTrue(cached.verify());
+            Assert.assertTrue(cached.getBuffer().isReadOnly());
+            Assert.assertEquals(text.length, cache.get("stored").getSize());
+            Path file = directory.resolve("text.entry");
+            byte[] damaged = Files.readAllBytes(file);
+            damaged[damaged.length - 3] ^= 0x55;
+            Files.write(file, damaged);
+            Assert.assertNull(cache.get("text"));
+            Assert.assertFalse(Files.exists(file));
+            Assert.assertNotNull(new CompressedEntryCacheDisk(directory, 1024 * 1024).get("stored"));
+            Path old = directory.resolve("old.entry");
+            Files.write(old, new byte[64]);
+            Assert.assertNull(new CompressedEntryCacheDisk(directory, 1024 * 1024).get("old"));
+            Assert.assertFalse(Files.exists(old));
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+}
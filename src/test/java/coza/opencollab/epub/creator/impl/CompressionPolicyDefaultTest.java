@@ -0,0 +1,75 @@
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.model.Content;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.Deflater;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class CompressionPolicyDefaultTest {
+
+    @Test
+    public void testLevels() throws Exception {
+        byte[] text = new byte[1024];
+        Arrays.fill(text, (byte) 'a');
+        byte[] random = new byte[8192];
+        new Random(1).nextBytes(random);
+        CompressionPolicyDefault policy = new CompressionPolicyDefault(Deflater.BEST_SPEED);
+        Assert.assertEquals(Deflater.BEST_SPEED, policy.getCompressionLevel(
+                new Content("text/css", "css/a.css", text)));
+        Assert.assertEquals(Deflater.NO_COMPRESSION, policy.getCompressionLevel(
+                new Content("text/css", "css/b.css", new byte[10])));
+        Assert.assertEquals(Deflater.NO_COMPRESSION, policy.getCompressionLevel(
+                new Content("image/png", "images/a.png", text)));
+        Assert.assertEquals(Deflater.NO_COMPRESSION, policy.getCompressionLevel(
+                new Content("application/octet-stream", "data/a.bin", random)));
+        policy.setEntropySampleSize(0);
+        Assert.assertEquals(Deflater.BEST_SPEED, policy.getCompressionLevel(
+                new Content("application/octet-stream", "data/a.bin", random)));
+    }
+
+    @Test
+    public void testStoredMediaTypes() throws Exception {
+        CompressionPolicyDefault policy = new CompressionPolicyDefault();
+        Set<String> types = new HashSet<>(Collections.singleton("text/css"));
+        policy.setStoredMediaTypes(types);
+        types.add("application/xhtml+xml");
+        Assert.assertEquals(1, policy.getStoredMediaTypes().size());
+        try {
+            policy.getStoredMediaTypes().add("image/png");
+            Assert.fail("The stored media types can be modified");
+        } catch (UnsupportedOperationException e) {
+        }
+        byte[] text = new byte[1024];
+        Assert.assertEquals(Deflater.NO_COMPRESSION, policy.getCompressionLevel(
+                new Content("text/css", "css/a.css", text)));
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getCompressionLevel(
+                new Content("image/png", "images/a.png", text)));
+    }
+
+    @Test
+    public void testInvalidLevel() {
+        CompressionPolicyDefault policy = new CompressionPolicyDefault();
+        policy.setLevel(Deflater.NO_COMPRESSION);
+        policy.setLevel(Deflater.DEFAULT_COMPRESSION);
+        try {
+            policy.setLevel(10);
+            Assert.fail("Level 10 is accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new CompressionPolicyDefault(-2);
+            Assert.fail("Level -2 is accepted");
+        } catch (IllegalArgumentException e) {
+        }
+        Assert.assertEquals(Deflater.DEFAULT_COMPRESSION, policy.getLevel());
+    }
+}
@@ -0,0 +1,56 @@
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.EpubConstants;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class OpfCreatorStreamingTest {
+
+    private EpubBook createBook() throws Exception {
+        EpubBook book = new EpubBook("en", "opf-test", "OPF <Test> & Book", "OpenCollab");
+        book.setModified(new Date(1400000000000L));
+        book.addTextContent("Chapter 1", "xhtml/chapter1.xhtml", "Chapter 1 text").setToc(true);
+        Content notes = book.addTextContent("Notes", "xhtml/notes.xhtml", "Notes text");
+        notes.setLinear(false);
+        Content image = book.addContent(new byte[10], "image/svg+xml", "img/cover.svg", false, false);
+        image.setProperties("cover-image");
+        image.setFallBack(book.addContent(new byte[10], "image/png", "img/cover.png", false, false));
+        return book;
+    }
+
+    @Test
+    public void testSameAsDefault() throws Exception {
+        EpubBook book = createBook();
+        String expected = new OpfCreatorDefault().createOpfString(book);
+        Assert.assertTrue(expected.contains("2014-05-13T16:53:20Z"));
+        OpfCreatorStreaming creator = new OpfCreatorStreaming();
+        Assert.assertEquals(expected, creator.createOpfString(book));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        creator.writeOpf(book, out);
+        Assert.assertEquals(expected, out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        EpubBook book = createBook();
+        String template = EpubConstants.OPF_XML.replace("<spine>", "<spine page-progression-direction=\"rtl\">");
+        OpfCreatorDefault creator = new OpfCreatorDefault();
+        creator.setOpfXML(template);
+        String expected = creator.createOpfString(book);
+        Assert.assertTrue(expected.contains("page-progression-direction"));
+        OpfCreatorStreaming streaming = new OpfCreatorStreaming();
+        streaming.setOpfXML(template);
+        Assert.assertEquals(expected, streaming.createOpfString(book));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streaming.writeOpf(book, out);
+        Assert.assertEquals(expected, out.toString("UTF-8"));
+    }
+}
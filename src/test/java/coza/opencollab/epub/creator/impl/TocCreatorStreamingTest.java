@@ -0,0 +1,126 @@
+package coza.opencollab.epub.creator.impl;
+
+import coza.opencollab.epub.creator.EpubConstants;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.Landmark;
+import coza.opencollab.epub.creator.model.TocLink;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import javax.xml.parsers.DocumentBuilderFactory;
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class TocCreatorStreamingTest {
+
+    private EpubBook createBook() throws Exception {
+        EpubBook book = new EpubBook("en", "toc-test", "TOC <Test> & Book", "OpenCollab");
+        book.addTextContent("Chapter 1", "xhtml/chapter1.xhtml", "Chapter 1 text").setToc(true);
+        book.addTextContent("Chapter 2", "xhtml/chapter2.xhtml", "Chapter 2 text").setToc(true);
+        book.addTextContent("Notes", "xhtml/notes.xhtml", "Notes text");
+        return book;
+    }
+
+    @Test
+    public void testAutoToc() throws Exception {
+        assertSameAsDefault(createBook());
+    }
+
+    @Test
+    public void testTocLinksAndLandmarks() throws Exception {
+        EpubBook book = createBook();
+        book.setAutoToc(false);
+        TocLink part = new TocLink("xhtml/chapter1.xhtml", "Part & one", "The first part");
+        part.setTocChildLinks(new ArrayList<TocLink>());
+        part.getTocChildLinks().add(new TocLink("xhtml/chapter1.xhtml#a", "Section a", null));
+        part.getTocChildLinks().add(new TocLink("xhtml/chapter2.xhtml", "Section b", "Second"));
+        book.getTocLinks().add(part);
+        book.getTocLinks().add(new TocLink("xhtml/notes.xhtml", "Notes", null));
+        Landmark landmark = new Landmark();
+        landmark.setHref("xhtml/chapter1.xhtml");
+        landmark.setType("bodymatter");
+        landmark.setTitle("Start");
+        book.setLandmarks(new ArrayList<>(Arrays.asList(landmark)));
+        assertSameAsDefault(book);
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        EpubBook book = createBook();
+        String template = EpubConstants.TOC_XML.replace("<title>{0}</title>", "<title>Contents</title>");
+        TocCreatorDefault creator = new TocCreatorDefault();
+        creator.setTocHtml(template);
+        byte[] expected = read(creator.createTocFromBook(book));
+        Assert.assertTrue(new String(expected, "UTF-8").contains("<title>Contents</title>"));
+        TocCreatorStreaming streaming = new TocCreatorStreaming();
+        streaming.setTocHtml(template);
+        Assert.assertTrue(Arrays.equals(expected, read(streaming.createTocFromBook(book))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streaming.writeToc(book, out);
+        Assert.assertTrue(Arrays.equals(expected, out.toByteArray()));
+    }
+
+    /**
+     * Compares the title, the links and the landmarks of the navigation
+     * documents, the whitespace of the documents differs
+     *
+     * @param book
+     * @throws Exception
+     */
+    private void assertSameAsDefault(EpubBook book) throws Exception {
+        String expected = describe(read(new TocCreatorDefault().createTocFromBook(book)));
+        TocCreatorStreaming creator = new TocCreatorStreaming();
+        Assert.assertEquals(expected, describe(read(creator.createTocFromBook(book))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        creator.writeToc(book, out);
+        Assert.assertEquals(expected, describe(out.toByteArray()));
+    }
+
+    private byte[] read(Content content) throws Exception {
+        try (InputStream in = content.getSource().openStream()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private String describe(byte[] toc) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(toc));
+        StringBuilder description = new StringBuilder();
+        description.append(document.getElementsByTagName("title").item(0).getTextContent()).append('\n');
+        NodeList navs = document.getElementsByTagName("nav");
+        for (int i = 0; i < navs.getLength(); i++) {
+            Element nav = (Element) navs.item(i);
+            if (nav.getElementsByTagName("li").getLength() > 0) {
+                description.append(nav.getAttribute("epub:type")).append('\n');
+                describeLinks(description, nav, 0);
+            }
+        }
+        return description.toString();
+    }
+
+    private void describeLinks(StringBuilder description, Node node, int depth) {
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && "a".equals(child.getNodeName())) {
+                Element link = (Element) child;
+                description.append(depth).append(' ').append(link.getAttribute("href"))
+                        .append(' ').append(link.getAttribute("title"))
+                        .append(' ').append(link.getAttribute("epub:type"))
+                        .append(' ').append(link.getTextContent()).append('\n');
+            } else if (child instanceof Element) {
+                describeLinks(description, child, "ol".equals(child.getNodeName()) ? depth + 1 : depth);
+            }
+        }
+    }
+}
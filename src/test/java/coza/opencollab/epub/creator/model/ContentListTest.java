@@ -0,0 +1,103 @@
+package coza.opencollab.epub.creator.model;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class ContentListTest {
+
+    private EpubBook createBook() throws Exception {
+        EpubBook book = new EpubBook("en", "list-test", "List Test Book", "OpenCollab");
+        book.addContent(this.getClass().getResourceAsStream("/epub30-overview.xhtml"),
+                "application/xhtml+xml", "xhtml/epub30-overview.xhtml", true, true);
+        book.addContent(this.getClass().getResourceAsStream("/idpflogo_web_125.jpg"),
+                "image/jpeg", "img/idpflogo_web_125.jpg", false, false);
+        book.addContent(this.getClass().getResourceAsStream("/epub-spec.css"),
+                "text/css", "css/epub-spec.css", false, false);
+        for (int i = 0; i < 50; i++) {
+            book.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", "Chapter " + i + " text").setToc(true);
+        }
+        return book;
+    }
+
+    @Test
+    public void testContentIndex() throws Exception {
+        EpubBook book = createBook();
+        Content chapter = book.getContentByHref("xhtml/chapter7.xhtml");
+        Assert.assertSame(book.getContents().get(10), chapter);
+        Assert.assertSame(chapter, book.getContentById(chapter.getId()));
+        chapter.setId("seven");
+        Assert.assertSame(chapter, book.getContentById("seven"));
+        Assert.assertEquals(51, book.getTocContents().size());
+        Assert.assertEquals(51, book.getSpineContents().size());
+        Assert.assertEquals(1, book.getContentsByMediaType("text/css").size());
+        book.moveContentBefore("xhtml/chapter7.xhtml", "xhtml/epub30-overview.xhtml");
+        Assert.assertSame(chapter, book.getContents().get(0));
+        Assert.assertSame(chapter, book.getTocContents().get(0));
+        book.moveContentAfter("xhtml/chapter7.xhtml", "xhtml/chapter49.xhtml");
+        Assert.assertSame(chapter, book.getContents().get(52));
+        Content replacement = new Content("application/xhtml+xml", "other.xhtml", "<html/>".getBytes("UTF-8"));
+        Assert.assertSame(chapter, book.replaceContent("xhtml/chapter7.xhtml", replacement));
+        Assert.assertSame(replacement, book.getContentByHref("xhtml/chapter7.xhtml"));
+        Assert.assertSame(replacement, book.getContents().get(52));
+        Assert.assertSame(replacement, book.removeContent("xhtml/chapter7.xhtml"));
+        Assert.assertNull(book.getContentByHref("xhtml/chapter7.xhtml"));
+        Assert.assertEquals(52, book.getContents().size());
+        Assert.assertEquals(50, book.getTocContents().size());
+    }
+
+    @Test
+    public void testSharedContent() {
+        ContentList list = new ContentList();
+        Content content = new Content("text/css", "css/a.css", "a.css", null, new byte[0]);
+        list.add(content);
+        try {
+            list.add(content);
+            Assert.fail("Content already in the list is added");
+        } catch (IllegalArgumentException e) {
+        }
+        ContentList copy = new ContentList(list);
+        ContentList other = new ContentList();
+        other.add(new Content("text/css", "css/b.css", new byte[0]));
+        other.set(0, content);
+        Assert.assertEquals(copy, list);
+        content.setHref("css/c.css");
+        Assert.assertSame(content, list.getByHref("css/c.css"));
+        Assert.assertSame(content, copy.getByHref("css/c.css"));
+        Assert.assertSame(content, other.getByHref("css/c.css"));
+        copy.remove(content);
+        content.setHref("css/d.css");
+        Assert.assertNull(copy.getByHref("css/d.css"));
+        Assert.assertSame(content, list.getByHref("css/d.css"));
+        Assert.assertSame(content, other.getByHref("css/d.css"));
+        EpubBook book = new EpubBook("en", "shared", "Shared", "OpenCollab");
+        book.addContent(content);
+        Assert.assertSame(content, book.getContentByHref("css/d.css"));
+        Assert.assertEquals(1, new ContentList(book.getContents()).size());
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        ContentList list = new ContentList();
+        Content first = new Content("text/css", "css/a.css", "a", null, new byte[0]);
+        Content sameHref = new Content("text/css", "css/a.css", "b", null, new byte[0]);
+        Content sameId = new Content("text/css", "css/c.css", "a", null, new byte[0]);
+        list.add(first);
+        list.add(sameHref);
+        list.add(sameId);
+        Assert.assertSame(first, list.getByHref("css/a.css"));
+        Assert.assertSame(first, list.getById("a"));
+        list.remove(first);
+        Assert.assertSame(sameHref, list.getByHref("css/a.css"));
+        Assert.assertSame(sameId, list.getById("a"));
+        sameHref.setHref("css/b.css");
+        Assert.assertNull(list.getByHref("css/a.css"));
+        Assert.assertSame(sameHref, list.getByHref("css/b.css"));
+        sameId.setId("c");
+        Assert.assertNull(list.getById("a"));
+        Assert.assertSame(sameId, list.getById("c"));
+    }
+}
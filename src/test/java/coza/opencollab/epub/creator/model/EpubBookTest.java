@@ -0,0 +1,127 @@
+package coza.opencollab.epub.creator.model;
+
+import coza.opencollab.epub.creator.util.EpubWriter;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class EpubBookTest {
+
+    private EpubBook createBook(long memoryBudget) throws Exception {
+        EpubBook book = new EpubBook("en", "book-test", "Book Test", "OpenCollab");
+        book.setModified(new Date(1400000000000L));
+        book.setMemoryBudget(memoryBudget);
+        book.addContent(this.getClass().getResourceAsStream("/epub30-overview.xhtml"),
+                "application/xhtml+xml", "xhtml/epub30-overview.xhtml", true, true);
+        book.addContent(this.getClass().getResourceAsStream("/idpflogo_web_125.jpg"),
+                "image/jpeg", "img/idpflogo_web_125.jpg", false, false);
+        book.addContent(this.getClass().getResourceAsStream("/epub-spec.css"),
+                "text/css", "css/epub-spec.css", false, false);
+        for (int i = 0; i < 50; i++) {
+            book.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", "Chapter " + i + " text").setToc(true);
+        }
+        return book;
+    }
+
+    private byte[] write(EpubBook book) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new EpubWriter().writeEpubToStream(book, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        byte[] expected = write(createBook(-1));
+        EpubBook book = createBook(20000);
+        Assert.assertTrue(book.getMemoryUsed() <= 20000);
+        Path spilled = ((FileContentSource) book.getContents().get(book.getContents().size() - 1).getSource()).getPath();
+        try {
+            Assert.assertTrue(Arrays.equals(expected, write(book)));
+        } finally {
+            book.close();
+        }
+        Assert.assertFalse(Files.exists(spilled));
+    }
+
+    @Test
+    public void testUniqueHrefs() {
+        EpubBook book = new EpubBook("en", "book-test", "Book Test", "OpenCollab");
+        Content first = book.addTextContent("One", "/xhtml/one.xhtml", "One");
+        Assert.assertEquals("xhtml/one.xhtml", first.getHref());
+        Assert.assertEquals("xhtml/one_1.xhtml", book.addTextContent("Two", "xhtml/one.xhtml", "Two").getHref());
+        first.setHref("xhtml/first.xhtml");
+        Assert.assertEquals("xhtml/one.xhtml", book.addTextContent("Three", "xhtml/one.xhtml", "Three").getHref());
+        Assert.assertEquals("xhtml/first_2.xhtml", book.addTextContent("Four", "xhtml/first.xhtml", "Four").getHref());
+        Assert.assertTrue(book.getUniqueHrefs().contains("xhtml/first.xhtml"));
+        book.replaceContent("xhtml/first.xhtml", new Content("application/xhtml+xml", "xhtml/other.xhtml", new byte[0]));
+        Assert.assertTrue(book.getUniqueHrefs().contains("xhtml/first.xhtml"));
+        Assert.assertFalse(book.getUniqueHrefs().contains("xhtml/other.xhtml"));
+        book.removeContent("xhtml/first.xhtml");
+        Assert.assertEquals("xhtml/first.xhtml", book.addTextContent("Five", "xhtml/first.xhtml", "Five").getHref());
+        Assert.assertEquals(4, book.getUniqueHrefs().size());
+    }
+
+    @Test
+    public void testRemoveReleasesMemory() {
+        EpubBook book = new EpubBook("en", "book-test", "Book Test", "OpenCollab");
+        book.setMemoryBudget(1000);
+        book.setDeduplicateContent(true);
+        book.addContent(new byte[400], "image/png", "images/a.png", false, false);
+        book.addContent(new byte[400], "image/png", "images/b.png", false, false);
+        book.addContent(new byte[500], "image/png", "images/c.png", false, false);
+        Assert.assertEquals(900, book.getMemoryUsed());
+        book.removeContent("images/a.png");
+        Assert.assertEquals(900, book.getMemoryUsed());
+        book.removeContent("images/b.png");
+        Assert.assertEquals(500, book.getMemoryUsed());
+        book.replaceContent("images/c.png", new Content("image/png", "images/c.png", new byte[300]));
+        Assert.assertEquals(300, book.getMemoryUsed());
+        book.addContent(new byte[400], "image/png", "images/d.png", false, false);
+        Assert.assertEquals(700, book.getMemoryUsed());
+        Assert.assertTrue(book.getContentByHref("images/d.png").getSource() instanceof ByteArrayContentSource);
+    }
+
+    @Test
+    public void testSetContentUpdatesMemory() throws Exception {
+        EpubBook book = new EpubBook("en", "book-test", "Book Test", "OpenCollab");
+        book.setMemoryBudget(1000);
+        book.setDeduplicateContent(true);
+        Content a = book.addContent(new byte[400], "image/png", "images/a.png", false, false);
+        Content b = book.addContent(new byte[] {1}, "image/png", "images/b.png", false, false);
+        Assert.assertEquals(401, book.getMemoryUsed());
+        a.setContent(new byte[300]);
+        Assert.assertEquals(301, book.getMemoryUsed());
+        b.setContent(new byte[300]);
+        Assert.assertEquals(300, book.getMemoryUsed());
+        Assert.assertSame(a.getSource(), b.getSource());
+        a.setContent(new byte[2000]);
+        Assert.assertEquals(300, book.getMemoryUsed());
+        Assert.assertFalse(a.getSource() instanceof ByteArrayContentSource);
+        book.removeContent("images/b.png");
+        Assert.assertEquals(0, book.getMemoryUsed());
+        book.close();
+    }
+
+    @Test
+    public void testCopyWithContents() {
+        EpubBook book = new EpubBook("en", "book-test", "Book Test", "OpenCollab");
+        book.getTocLinks().add(new TocLink("xhtml/one.xhtml", "One", null));
+        book.setLandmarks(new ArrayList<Landmark>());
+        EpubBook copy = book.copyWithContents(new ArrayList<>(book.getContents()));
+        copy.getTocLinks().add(new TocLink("xhtml/two.xhtml", "Two", null));
+        copy.getLandmarks().add(new Landmark());
+        Assert.assertEquals(1, book.getTocLinks().size());
+        Assert.assertEquals(Collections.emptyList(), book.getLandmarks());
+        Assert.assertEquals(2, copy.getTocLinks().size());
+    }
+}
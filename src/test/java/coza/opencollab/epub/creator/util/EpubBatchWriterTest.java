@@ -0,0 +1,91 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.api.CompressionPolicy;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.ContentSource;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class EpubBatchWriterTest {
+
+    @Test
+    public void testFailureDoesNotAbortBatch() throws Exception {
+        List<EpubBatchJob> jobs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            EpubBook book = new EpubBook("en", "batch-" + i, "Batch " + i, "OpenCollab");
+            book.addTextContent("Chapter", "chapter.xhtml", "Book " + i).setToc(true);
+            if (i == 7) {
+                book.addContent(new ContentSource() {
+                    @Override
+                    public InputStream openStream() throws IOException {
+                        throw new IOException("broken source");
+                    }
+
+                    @Override
+                    public long getSize() {
+                        return 100;
+                    }
+
+                    @Override
+                    public boolean isRepeatable() {
+                        return true;
+                    }
+                }, "text/css", "broken.css", false, false);
+            }
+            if (i == 12) {
+                book.addContent(new ContentSource() {
+                    @Override
+                    public InputStream openStream() throws IOException {
+                        throw new AssertionError("source error");
+                    }
+
+                    @Override
+                    public long getSize() {
+                        return 100;
+                    }
+
+                    @Override
+                    public boolean isRepeatable() {
+                        return true;
+                    }
+                }, "text/css", "error.css", false, false);
+            }
+            jobs.add(new EpubBatchJob(book, new ByteArrayOutputStream()));
+        }
+        List<EpubBatchResult> results = new EpubBatchWriter(new EpubWriter().freeze(), null, 4).writeAll(jobs);
+        Assert.assertEquals(20, results.size());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertSame(jobs.get(i), results.get(i).getJob());
+            Assert.assertEquals(i != 7 && i != 12, results.get(i).isSuccess());
+        }
+        Assert.assertEquals("broken source", results.get(7).getException().getMessage());
+        Assert.assertTrue(results.get(12).getException() instanceof AssertionError);
+    }
+
+    @Test
+    public void testInvalidLevel() throws Exception {
+        EpubWriter writer = new EpubWriter();
+        writer.setCompressionPolicy(new CompressionPolicy() {
+            @Override
+            public int getCompressionLevel(Content content) {
+                return 12;
+            }
+        });
+        EpubBook book = new EpubBook("en", "batch-level", "Batch Level", "OpenCollab");
+        book.addTextContent("Chapter", "chapter.xhtml", "Chapter text");
+        List<EpubBatchResult> results = new EpubBatchWriter(writer.freeze(), null, 1).writeAll(
+                Collections.singletonList(new EpubBatchJob(book, new ByteArrayOutputStream())));
+        Assert.assertTrue(results.get(0).getException() instanceof IllegalArgumentException);
+    }
+}
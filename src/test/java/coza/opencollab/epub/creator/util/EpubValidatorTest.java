@@ -0,0 +1,82 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.Landmark;
+import coza.opencollab.epub.creator.model.TocLink;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class EpubValidatorTest {
+
+    @Test
+    public void testValidation() throws Exception {
+        EpubBook book = new EpubBook("en", "validation-test", "Validation Test Book", "OpenCollab");
+        book.addContent(this.getClass().getResourceAsStream("/idpflogo_web_125.jpg"),
+                "image/jpeg", "img/idpflogo_web_125.jpg", false, false);
+        book.addContent(this.getClass().getResourceAsStream("/epub-spec.css"),
+                "text/css", "css/epub-spec.css", false, false);
+        book.addTextContent("Chapter", "xhtml/chapter1.xhtml", "<img src=\"../img/idpflogo_web_125.jpg\" alt=\"\"/>"
+                + "<a href=\"#top\">Top</a><a href=\"http://www.idpf.org\">IDPF</a>").setToc(true);
+        Assert.assertTrue(new EpubValidator().validate(book).isValid());
+        book.addTextContent("Broken", "xhtml/broken.xhtml", "<p>Not closed");
+        book.addContent("body {\n background: url('../img/missing.png');\n}".getBytes("UTF-8"),
+                "text/css", "css/missing.css", false, false);
+        book.getContents().get(0).setFallBack(new Content("image/png", "img/other.png", new byte[0]));
+        book.setAutoToc(false);
+        book.getTocLinks().add(new TocLink("xhtml/chapter1.xhtml#part", "Part", null));
+        book.getTocLinks().add(new TocLink("xhtml/none.xhtml", "None", null));
+        book.setLandmarks(new ArrayList<Landmark>());
+        book.getLandmarks().add(landmark("toc.xhtml", "toc", "Contents"));
+        book.getLandmarks().add(landmark("xhtml/cover.xhtml", "cover", "Cover"));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EpubValidator validator = new EpubValidator();
+            validator.setExecutor(pool);
+            EpubValidationReport report = validator.validate(book);
+            Assert.assertEquals(5, report.getProblems().size());
+            for (EpubValidationReport.Type type : Arrays.asList(EpubValidationReport.Type.NOT_WELL_FORMED,
+                    EpubValidationReport.Type.MISSING_REFERENCE, EpubValidationReport.Type.MISSING_FALLBACK,
+                    EpubValidationReport.Type.MISSING_TOC_TARGET, EpubValidationReport.Type.MISSING_LANDMARK_TARGET)) {
+                Assert.assertEquals(type.name(), 1, report.getProblems(type).size());
+            }
+            Assert.assertEquals(2, report.getProblems(EpubValidationReport.Type.MISSING_REFERENCE).get(0).getLine());
+            EpubWriter writer = new EpubWriter();
+            writer.setValidator(validator);
+            try {
+                writer.writeEpubToStream(book, new ByteArrayOutputStream());
+                Assert.fail();
+            } catch (EpubValidationException ex) {
+                Assert.assertSame(EpubValidationReport.Type.NOT_WELL_FORMED, ex.getReport().getProblems().get(0).getType());
+                ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+                    out.writeObject(ex);
+                }
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray()))) {
+                    Assert.assertEquals(5, ((EpubValidationException) in.readObject()).getReport().getProblems().size());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Landmark landmark(String href, String type, String title) {
+        Landmark landmark = new Landmark();
+        landmark.setHref(href);
+        landmark.setType(type);
+        landmark.setTitle(title);
+        return landmark;
+    }
+}
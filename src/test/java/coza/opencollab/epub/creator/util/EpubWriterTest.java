@@ -0,0 +1,471 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.api.CompressionPolicy;
+import coza.opencollab.epub.creator.impl.CompressedEntryCacheLru;
+import coza.opencollab.epub.creator.impl.EpubWriteHistogram;
+import coza.opencollab.epub.creator.impl.TocCreatorStreaming;
+import coza.opencollab.epub.creator.model.ByteBufferContentSource;
+import coza.opencollab.epub.creator.model.ChannelContentSource;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class EpubWriterTest {
+
+    private EpubBook createBook() throws Exception {
+        EpubBook book = new EpubBook("en", "writer-test", "Writer Test Book", "OpenCollab");
+        book.setModified(new Date(1400000000000L));
+        book.addContent(this.getClass().getResourceAsStream("/epub30-overview.xhtml"),
+                "application/xhtml+xml", "xhtml/epub30-overview.xhtml", true, true);
+        book.addContent(this.getClass().getResourceAsStream("/idpflogo_web_125.jpg"),
+                "image/jpeg", "img/idpflogo_web_125.jpg", false, false);
+        book.addContent(this.getClass().getResourceAsStream("/epub-spec.css"),
+                "text/css", "css/epub-spec.css", false, false);
+        for (int i = 0; i < 50; i++) {
+            book.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", "Chapter " + i + " text").setToc(true);
+        }
+        return book;
+    }
+
+    private byte[] write(EpubWriter writer, EpubBook book) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeEpubToStream(book, out);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testParallelOutputIdentical() throws Exception {
+        byte[] sequential = write(new EpubWriter(), createBook());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EpubWriter writer = new EpubWriter();
+            writer.setExecutor(pool);
+            writer.setMaxPendingEntries(8);
+            byte[] parallel = write(writer, createBook());
+            Assert.assertTrue(Arrays.equals(sequential, parallel));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentWrites() throws Exception {
+        final EpubBook book = createBook();
+        final EpubWriter writer = new EpubWriter().freeze();
+        int contentCount = book.getContents().size();
+        byte[] expected = write(writer, book);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(threads.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return write(writer, book);
+                    }
+                }));
+            }
+            for (Future<byte[]> result : results) {
+                Assert.assertTrue(Arrays.equals(expected, result.get()));
+            }
+        } finally {
+            threads.shutdown();
+        }
+        Assert.assertEquals(contentCount, book.getContents().size());
+    }
+
+    @Test
+    public void testCompressedEntryCache() throws Exception {
+        byte[] expected = write(new EpubWriter(), createBook());
+        CompressedEntryCacheLru cache = new CompressedEntryCacheLru(10 * 1024 * 1024);
+        EpubWriter writer = new EpubWriter();
+        writer.setCompressedEntryCache(cache);
+        Assert.assertTrue(Arrays.equals(expected, write(writer, createBook())));
+        int cached = cache.size();
+        Assert.assertTrue(cached > 0);
+        Assert.assertTrue(Arrays.equals(expected, write(writer, createBook())));
+        Assert.assertEquals(cached, cache.size());
+        CompressedEntryCacheLru small = new CompressedEntryCacheLru(4096);
+        writer = new EpubWriter();
+        writer.setCompressedEntryCache(small);
+        Assert.assertTrue(Arrays.equals(expected, write(writer, createBook())));
+        Assert.assertTrue(small.size() > 0);
+        Assert.assertTrue(small.size() < cached);
+    }
+
+    @Test
+    public void testDuplicateContent() throws Exception {
+        byte[] css = "body { margin: 0; padding: 0; }".getBytes("UTF-8");
+        EpubBook plain = createBook();
+        plain.addContent(css, "text/css", "css/a.css", false, false);
+        plain.addContent(css.clone(), "text/css", "css/b.css", false, false);
+        EpubBook deduplicated = createBook();
+        deduplicated.setDeduplicateContent(true);
+        Content a = deduplicated.addContent(css, "text/css", "css/a.css", false, false);
+        Content b = deduplicated.addContent(css.clone(), "text/css", "css/b.css", false, false);
+        Assert.assertSame(a.getSource(), b.getSource());
+        byte[] expected = write(new EpubWriter(), plain);
+        Assert.assertTrue(Arrays.equals(expected, write(new EpubWriter(), deduplicated)));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EpubWriter writer = new EpubWriter();
+            writer.setExecutor(pool);
+            Assert.assertTrue(Arrays.equals(expected, write(writer, deduplicated)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        File file = File.createTempFile("incremental", ".epub");
+        try {
+            EpubWriter writer = new EpubWriter();
+            EpubBook book = createBook();
+            writer.writeEpubToFile(book, file.getPath());
+            book.getContents().get(10).setContent("<html><body>Changed</body></html>".getBytes("UTF-8"));
+            writer.updateEpubFile(book, file.getPath());
+            Assert.assertTrue(Arrays.equals(write(writer, book), Files.readAllBytes(file.toPath())));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testPullStream() throws Exception {
+        EpubBook book = createBook();
+        EpubWriter writer = new EpubWriter();
+        byte[] expected = write(writer, book);
+        try (InputStream in = writer.openEpubStream(book)) {
+            Assert.assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+        }
+    }
+
+    @Test
+    public void testPullStreamParallel() throws Exception {
+        EpubBook book = createBook();
+        book.addContent(this.getClass().getResourceAsStream("/epub-spec.css"),
+                "text/css", "css/copy.css", false, false);
+        byte[] expected = write(new EpubWriter(), book);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            EpubWriteHistogram histogram = new EpubWriteHistogram();
+            EpubWriter writer = new EpubWriter();
+            writer.setExecutor(pool);
+            writer.setWriteListener(histogram);
+            try (InputStream in = writer.openEpubStream(book)) {
+                Assert.assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+            }
+            Assert.assertEquals(1, histogram.getWriteNanos().getCount());
+            writer.setValidator(new EpubValidator());
+            EpubBook broken = new EpubBook("en", "writer-test", "Writer Test Book", "OpenCollab");
+            broken.addTextContent("Broken", "xhtml/broken.xhtml", "<p>Not closed");
+            try (InputStream in = writer.openEpubStream(broken)) {
+                in.read();
+                Assert.fail();
+            } catch (EpubValidationException ex) {
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testPullStreamLargePackage() throws Exception {
+        Path spill = Files.createTempDirectory("pending");
+        try {
+            EpubBook book = createBook();
+            book.setSpillDirectory(spill);
+            for (int i = 0; i < 20000; i++) {
+                book.addContent(new byte[] {(byte) i}, "text/css", "css/style" + i + ".css", false, false);
+            }
+            EpubWriter writer = new EpubWriter();
+            writer.setCompressionPolicy(new CompressionPolicy() {
+                @Override
+                public int getCompressionLevel(Content content) {
+                    return Deflater.NO_COMPRESSION;
+                }
+            });
+            byte[] expected = write(writer, book);
+            try (InputStream in = writer.openEpubStream(book)) {
+                Assert.assertTrue(Arrays.equals(expected, IOUtils.toByteArray(in)));
+            }
+            Assert.assertEquals(0, spill.toFile().list().length);
+        } finally {
+            Files.delete(spill);
+        }
+    }
+
+    @Test
+    public void testStoredTocRenderedOnce() throws Exception {
+        final int[] rendered = new int[1];
+        EpubWriter writer = new EpubWriter();
+        writer.setTocCreator(new TocCreatorStreaming() {
+            @Override
+            public void writeToc(EpubBook book, OutputStream out) throws IOException {
+                rendered[0]++;
+                super.writeToc(book, out);
+            }
+        });
+        writer.setCompressionPolicy(new CompressionPolicy() {
+            @Override
+            public int getCompressionLevel(Content content) {
+                return Deflater.NO_COMPRESSION;
+            }
+        });
+        byte[] epub = write(writer, createBook());
+        Assert.assertEquals(1, rendered[0]);
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(epub))) {
+            ZipEntry entry = zip.getNextEntry();
+            while (!entry.getName().endsWith("toc.xhtml")) {
+                entry = zip.getNextEntry();
+            }
+            Assert.assertEquals(ZipEntry.STORED, entry.getMethod());
+            Assert.assertTrue(new String(IOUtils.toByteArray(zip), "UTF-8").contains("xhtml/chapter49.xhtml"));
+        }
+    }
+
+    @Test
+    public void testPullStreamFailure() throws Exception {
+        EpubBook book = createBook();
+        book.addContent(new Content("text/css", "css/failing.css", new ChannelContentSource(Channels.newChannel(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Read failed");
+            }
+        }))));
+        EpubWriteHistogram histogram = new EpubWriteHistogram();
+        EpubWriter writer = new EpubWriter();
+        writer.setWriteListener(histogram);
+        try (ReadableByteChannel channel = writer.openEpubChannel(book)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            try {
+                while (channel.read(buffer) != -1) {
+                    buffer.clear();
+                }
+                Assert.fail();
+            } catch (IOException ex) {
+                Assert.assertEquals("Read failed", ex.getMessage());
+            }
+            try {
+                channel.read(buffer);
+                Assert.fail();
+            } catch (IOException ex) {
+                Assert.assertEquals("Read failed", ex.getCause().getMessage());
+            }
+        }
+        Assert.assertEquals(0, histogram.getWriteNanos().getCount());
+    }
+
+    @Test
+    public void testPullStreamClose() throws Exception {
+        final boolean[] started = new boolean[1];
+        final boolean[] closed = new boolean[1];
+        byte[] large = new byte[1000000];
+        new Random(1).nextBytes(large);
+        EpubBook book = createBook();
+        book.addContent(new Content("text/css", "css/large.css", new ChannelContentSource(Channels.newChannel(new ByteArrayInputStream(large) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        }))));
+        final List<Exception> failures = new ArrayList<>();
+        EpubWriter writer = new EpubWriter();
+        writer.setWriteListener(new EpubWriteHistogram() {
+            @Override
+            public void entryStarted(String href, String mediaType) {
+                started[0] |= href.endsWith("css/large.css");
+            }
+
+            @Override
+            public void writeFailed(EpubBook book, Exception ex) {
+                failures.add(ex);
+            }
+        });
+        ReadableByteChannel channel = writer.openEpubChannel(book);
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (!started[0]) {
+            channel.read(buffer);
+            buffer.clear();
+        }
+        channel.read(buffer);
+        Assert.assertFalse(closed[0]);
+        channel.close();
+        Assert.assertTrue(closed[0]);
+        Assert.assertEquals(1, failures.size());
+        Assert.assertTrue(failures.get(0) instanceof ClosedChannelException);
+    }
+
+    @Test
+    public void testWriteListener() throws Exception {
+        EpubBook book = createBook();
+        EpubWriteHistogram histogram = new EpubWriteHistogram();
+        EpubWriter writer = new EpubWriter();
+        writer.setWriteListener(histogram);
+        byte[] epub = write(writer, book);
+        Assert.assertEquals(1, histogram.getWriteNanos().getCount());
+        Assert.assertEquals(1, histogram.getTocNanos().getCount());
+        Assert.assertEquals(1, histogram.getOpfNanos().getCount());
+        Assert.assertEquals(book.getContents().size() + 4, histogram.getEntryNanos().getCount());
+        Assert.assertEquals(epub.length, histogram.getBookSizes().getMax());
+        Assert.assertTrue(histogram.getCompressionRatio() < 1);
+    }
+
+    @Test
+    public void testByteBufferContent() throws Exception {
+        byte[] image = IOUtils.toByteArray(this.getClass().getResourceAsStream("/P1010832.jpg"));
+        byte[] css = IOUtils.toByteArray(this.getClass().getResourceAsStream("/epub-spec.css"));
+        EpubBook heap = createBook();
+        heap.addContent(image, "image/jpeg", "img/P1010832.jpg", false, false);
+        heap.addContent(css, "text/css", "css/other.css", false, false);
+        EpubBook direct = createBook();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(image.length);
+        buffer.put(image).flip();
+        direct.addContent(buffer, "image/jpeg", "img/P1010832.jpg", false, false);
+        direct.addContent(ByteBufferContentSource.readDirect(new ByteArrayInputStream(css), -1),
+                "text/css", "css/other.css", false, false);
+        Assert.assertTrue(Arrays.equals(write(new EpubWriter(), heap), write(new EpubWriter(), direct)));
+    }
+
+    @Test
+    public void testPreparedEpub() throws Exception {
+        EpubBook book = createBook();
+        EpubWriter writer = new EpubWriter();
+        byte[] expected = write(writer, book);
+        Path spool = Files.createTempDirectory("spool");
+        try (EncodedEpub memory = writer.prepare(book);
+                EncodedEpub spooled = writer.prepare(book, spool)) {
+            for (EncodedEpub epub : Arrays.asList(memory, spooled)) {
+                Assert.assertEquals(expected.length, epub.getSize());
+                for (int i = 0; i < 2; i++) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    epub.writeTo(out);
+                    Assert.assertTrue(Arrays.equals(expected, out.toByteArray()));
+                }
+            }
+        } finally {
+            Files.delete(spool);
+        }
+        Assert.assertEquals(53, book.getContents().size());
+    }
+
+    @Test
+    public void testStreamWriter() throws Exception {
+        EpubWriter writer = new EpubWriter();
+        Map<String, byte[]> expected = readEntries(write(writer, createBook()));
+        EpubBook book = new EpubBook("en", "writer-test", "Writer Test Book", "OpenCollab");
+        book.setModified(new Date(1400000000000L));
+        book.setMemoryBudget(1 << 20);
+        book.addContent(this.getClass().getResourceAsStream("/epub30-overview.xhtml"),
+                "application/xhtml+xml", "xhtml/epub30-overview.xhtml", true, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (EpubStreamWriter epub = writer.openEpubWriter(book, out)) {
+            epub.addContent(this.getClass().getResourceAsStream("/idpflogo_web_125.jpg"),
+                    "image/jpeg", "img/idpflogo_web_125.jpg", false, false);
+            epub.addContent(this.getClass().getResourceAsStream("/epub-spec.css"),
+                    "text/css", "css/epub-spec.css", false, false);
+            for (int i = 0; i < 50; i++) {
+                epub.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", "Chapter " + i + " text").setToc(true);
+            }
+        }
+        for (Content content : book.getContents()) {
+            Assert.assertNull(content.getSource());
+        }
+        Assert.assertEquals(0, book.getMemoryUsed());
+        Map<String, byte[]> streamed = readEntries(out.toByteArray());
+        Assert.assertEquals(expected.keySet(), streamed.keySet());
+        for (String name : expected.keySet()) {
+            Assert.assertTrue(name, Arrays.equals(expected.get(name), streamed.get(name)));
+        }
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            Assert.assertEquals("mimetype", zip.getNextEntry().getName());
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                if (entry.getName().endsWith(".jpg")) {
+                    Assert.assertEquals(ZipEntry.STORED, entry.getMethod());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamWriterFailure() throws Exception {
+        final boolean[] closed = new boolean[1];
+        OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        EpubBook book = new EpubBook("en", "writer-test", "Writer Test Book", "OpenCollab");
+        EpubStreamWriter epub = new EpubWriter().openEpubWriter(book, out);
+        epub.addTextContent("Chapter", "xhtml/chapter.xhtml", "Chapter text");
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Read failed");
+            }
+        };
+        try {
+            epub.addContent(failing, "text/css", "css/failing.css", false, false);
+            Assert.fail();
+        } catch (IOException ex) {
+            Assert.assertEquals("Read failed", ex.getMessage());
+        }
+        Assert.assertTrue(closed[0]);
+        try {
+            epub.addTextContent("Chapter", "xhtml/other.xhtml", "Chapter text");
+            Assert.fail();
+        } catch (IllegalStateException ex) {
+        }
+        epub.close();
+    }
+
+    private Map<String, byte[]> readEntries(byte[] epub) throws Exception {
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(epub))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), IOUtils.toByteArray(zip));
+            }
+        }
+        return entries;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFrozenConfiguration() {
+        new EpubWriter().freeze().setContentFolder("other");
+    }
+}
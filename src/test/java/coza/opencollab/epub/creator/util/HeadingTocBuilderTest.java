@@ -0,0 +1,64 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.impl.TocCreatorStreaming;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.TocLink;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class HeadingTocBuilderTest {
+
+    private EpubBook createBook() throws Exception {
+        EpubBook book = new EpubBook("en", "heading-test", "Heading Test Book", "OpenCollab");
+        book.addContent(this.getClass().getResourceAsStream("/epub30-overview.xhtml"),
+                "application/xhtml+xml", "xhtml/epub30-overview.xhtml", true, true);
+        book.addTextContent("Part", "xhtml/part.xhtml",
+                "<h1 id=\"part\">Part   One</h1><h2 id=\"a\">A</h2><h3>A.1</h3><h2 id=\"b\">B</h2>").setToc(true);
+        book.addTextContent("Plain", "xhtml/plain.xhtml", "<p>No headings</p>").setToc(true);
+        return book;
+    }
+
+    @Test
+    public void testNestedHeadings() throws Exception {
+        HeadingTocBuilder builder = new HeadingTocBuilder();
+        List<TocLink> links = builder.build(createBook());
+        Assert.assertEquals(3, links.size());
+        Assert.assertEquals("EPUB 3 Overview", links.get(0).getTitle());
+        Assert.assertEquals("xhtml/epub30-overview.xhtml#sec-intro", links.get(0).getTocChildLinks().get(0).getHref());
+        TocLink part = links.get(1);
+        Assert.assertEquals("xhtml/part.xhtml#part", part.getHref());
+        Assert.assertEquals("Part One", part.getTitle());
+        Assert.assertEquals(2, part.getTocChildLinks().size());
+        Assert.assertEquals("xhtml/part.xhtml", part.getTocChildLinks().get(0).getTocChildLinks().get(0).getHref());
+        Assert.assertEquals("xhtml/plain.xhtml", links.get(2).getHref());
+        Assert.assertNull(links.get(2).getTocChildLinks());
+    }
+
+    @Test
+    public void testParallelToc() throws Exception {
+        EpubBook book = createBook();
+        TocCreatorStreaming tocCreator = new TocCreatorStreaming();
+        tocCreator.setHeadingTocBuilder(new HeadingTocBuilder());
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        tocCreator.writeToc(book, expected);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            HeadingTocBuilder builder = new HeadingTocBuilder();
+            builder.setExecutor(pool);
+            tocCreator.setHeadingTocBuilder(builder);
+            ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+            tocCreator.writeToc(book, parallel);
+            Assert.assertEquals(expected.toString("UTF-8"), parallel.toString("UTF-8"));
+            Assert.assertTrue(parallel.toString("UTF-8").contains("#sec-intro"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.Content;
+import java.util.Map;
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class MediaTypeUtilTest {
+
+    private Map<String, String> mediaTypes;
+
+    @Before
+    public void saveMediaTypes() {
+        mediaTypes = MediaTypeUtil.getMediaTypeMap();
+    }
+
+    @After
+    public void restoreMediaTypes() {
+        MediaTypeUtil.setMediaTypeMap(mediaTypes);
+    }
+
+    @Test
+    public void testLookup() {
+        Assert.assertEquals("application/xhtml+xml", MediaTypeUtil.getMediaTypeFromFilename("xhtml/Chapter1.XHTML"));
+        Assert.assertEquals("text/css", MediaTypeUtil.getMediaTypeFromExt("Css"));
+        Assert.assertNull(MediaTypeUtil.getMediaTypeFromFilename("xhtml/chapter1.unknown"));
+        Assert.assertNull(MediaTypeUtil.getMediaTypeFromFilename("README"));
+        MediaTypeUtil.registerMediaType("Woff2", "font/woff2");
+        Assert.assertEquals("font/woff2", MediaTypeUtil.getMediaTypeFromFilename("fonts/a.WOFF2"));
+        Assert.assertEquals("image/png", MediaTypeUtil.getMediaTypeFromExt("png"));
+        MediaTypeUtil.setMediaTypeMap(mediaTypes);
+        Assert.assertNull(MediaTypeUtil.getMediaTypeFromFilename("fonts/a.woff2"));
+    }
+
+    @Test
+    public void testSniffing() throws Exception {
+        byte[] jpeg = IOUtils.toByteArray(this.getClass().getResourceAsStream("/idpflogo_web_125.jpg"));
+        Assert.assertEquals("image/jpeg", MediaTypeUtil.sniffMediaType(jpeg));
+        Assert.assertEquals("image/svg+xml", MediaTypeUtil.sniffMediaType(
+                "<?xml version=\"1.0\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes("UTF-8")));
+        Assert.assertEquals("application/xhtml+xml", MediaTypeUtil.sniffMediaType(
+                IOUtils.toByteArray(this.getClass().getResourceAsStream("/epub30-overview.xhtml"))));
+        Assert.assertNull(MediaTypeUtil.sniffMediaType("plain text".getBytes("UTF-8")));
+        Assert.assertEquals("image/jpeg", new Content("images/logo", jpeg).getMediaType());
+    }
+}
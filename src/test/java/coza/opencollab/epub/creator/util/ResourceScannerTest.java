@@ -0,0 +1,61 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import coza.opencollab.epub.creator.model.FileContentSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import junit.framework.Assert;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class ResourceScannerTest {
+
+    @Test
+    public void testScan() throws Exception {
+        Path root = Files.createTempDirectory("resources");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Files.createDirectories(root.resolve("img"));
+            Files.createDirectories(root.resolve("css"));
+            Files.createDirectories(root.resolve("fonts"));
+            Files.write(root.resolve("img/local.png"), new byte[]{1, 2, 3});
+            Files.write(root.resolve("fonts/body.otf"), new byte[]{4, 5, 6});
+            Files.write(root.resolve("css/style.css"), "body { font-family: url(\"../fonts/body.otf\"); }".getBytes("UTF-8"));
+            EpubBook book = new EpubBook("en", "scan-test", "Scan Test Book", "OpenCollab");
+            Content chapter = book.addTextContent("Chapter", "xhtml/chapter.xhtml",
+                    "<script src=\"../js/missing.js\"></script>"
+                    + "<svg xmlns=\"http://www.w3.org/2000/svg\"><rect width=\"1\" height=\"1\"/></svg>"
+                    + "<math xmlns=\"http://www.w3.org/1998/Math/MathML\"><mi>x</mi></math>"
+                    + "<img src=\"http://www.idpf.org/logo.png\" alt=\"\"/><img src=\"../img/local.png#x\" alt=\"\"/>"
+                    + "<a href=\"other.xhtml\">Other</a>");
+            chapter.setProperties("cover-image");
+            Content plain = book.addTextContent("Plain", "xhtml/plain.xhtml",
+                    "<p>Plain</p><link rel=\"stylesheet\" href=\"../css/style.css\"/>");
+            ResourceScanner scanner = new ResourceScanner();
+            scanner.setExecutor(pool);
+            scanner.setResourceRoot(root);
+            ResourceScanReport report = scanner.scan(book);
+            Assert.assertEquals("cover-image scripted svg mathml remote-resources", chapter.getProperties());
+            Assert.assertNull(plain.getProperties());
+            Assert.assertEquals(Collections.singleton("js/missing.js"), report.getMissingResources().keySet());
+            Assert.assertEquals(Collections.singleton("xhtml/chapter.xhtml"), report.getMissingResources().get("js/missing.js"));
+            Assert.assertEquals(3, report.getAddedContents().size());
+            Assert.assertEquals(3, report.getContentsScanned());
+            for (String href : Arrays.asList("img/local.png", "css/style.css", "fonts/body.otf")) {
+                Assert.assertTrue(href, book.getContentByHref(href).getSource() instanceof FileContentSource);
+            }
+            Assert.assertEquals("text/css", book.getContentByHref("css/style.css").getMediaType());
+        } finally {
+            pool.shutdown();
+            FileUtils.deleteDirectory(root.toFile());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.EpubConstants;
+import coza.opencollab.epub.creator.model.Content;
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class TextTemplateTest {
+
+    @Test
+    public void testTextTemplate() throws Exception {
+        String body = "<p>caf\u00e9 \u20ac \ud83d\ude00 \ud83d</p>";
+        byte[] expected = MessageFormat.format(EpubConstants.HTML_WRAPPER, "T\u00eftle", body).getBytes("UTF-8");
+        TextTemplate template = TextTemplate.compile(EpubConstants.HTML_WRAPPER);
+        Assert.assertTrue(Arrays.equals(expected, template.encode("T\u00eftle", new StringBuilder(body))));
+        Assert.assertEquals(expected.length, template.toSource("T\u00eftle", body).getSize());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.write(out, "T\u00eftle", new StringReader(body));
+        Assert.assertTrue(Arrays.equals(expected, out.toByteArray()));
+        EpubBook book = new EpubBook("en", "template-test", "Template Test Book", "OpenCollab");
+        Content content = book.addTextContent("T\u00eftle", "xhtml/reader.xhtml", new StringReader(body));
+        Assert.assertTrue(Arrays.equals(expected, content.getContent()));
+    }
+}
@@ -0,0 +1,140 @@
+package coza.opencollab.epub.creator.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import junit.framework.Assert;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class ZipWriterTest {
+
+    @Test
+    public void testEntriesReadable() throws Exception {
+        byte[] text = "<html><body>Some text that compresses well well well well</body></html>".getBytes("UTF-8");
+        byte[] binary = new byte[100000];
+        new Random(1).nextBytes(binary);
+        File asset = File.createTempFile("asset", ".jpg");
+        File zip = File.createTempFile("writer", ".zip");
+        try {
+            Files.write(asset.toPath(), binary);
+            CRC32 crc = new CRC32();
+            crc.update(text);
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip));
+                    FileChannel file = FileChannel.open(asset.toPath(), StandardOpenOption.READ)) {
+                writer.writeStoredEntry("mimetype", "application/epub+zip".getBytes("UTF-8"));
+                try (OutputStream out = writer.openDeflatedEntry("content/text.xhtml", Deflater.BEST_COMPRESSION)) {
+                    out.write(text);
+                }
+                writer.writeStoredEntry("content/asset.jpg", file);
+                try (OutputStream out = writer.openStoredEntry("content/stored.xhtml", text.length, crc.getValue())) {
+                    out.write(text);
+                }
+            }
+
+            try (ZipFile zipFile = new ZipFile(zip)) {
+                Assert.assertEquals(4, zipFile.size());
+                Assert.assertEquals(ZipEntry.STORED, zipFile.getEntry("content/asset.jpg").getMethod());
+                Assert.assertTrue(Arrays.equals(binary, IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("content/asset.jpg")))));
+                Assert.assertTrue(Arrays.equals(text, IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("content/text.xhtml")))));
+            }
+            try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(Files.readAllBytes(zip.toPath())))) {
+                Assert.assertEquals("mimetype", in.getNextEntry().getName());
+                Assert.assertEquals("application/epub+zip", new String(IOUtils.toByteArray(in), "UTF-8"));
+                Assert.assertEquals("content/text.xhtml", in.getNextEntry().getName());
+                Assert.assertTrue(Arrays.equals(text, IOUtils.toByteArray(in)));
+                Assert.assertEquals("content/asset.jpg", in.getNextEntry().getName());
+                Assert.assertTrue(Arrays.equals(binary, IOUtils.toByteArray(in)));
+                Assert.assertEquals("content/stored.xhtml", in.getNextEntry().getName());
+                Assert.assertTrue(Arrays.equals(text, IOUtils.toByteArray(in)));
+            }
+        } finally {
+            asset.delete();
+            zip.delete();
+        }
+    }
+
+    @Test
+    public void testZip64Entries() throws Exception {
+        int count = 70000;
+        File zip = File.createTempFile("writer", ".zip");
+        try {
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip))) {
+                for (int i = 0; i < count; i++) {
+                    byte[] data = ("entry " + i).getBytes("UTF-8");
+                    if (i % 2 == 0) {
+                        writer.writeStoredEntry("e" + i, data);
+                    } else {
+                        try (OutputStream out = writer.openDeflatedEntry("e" + i, Deflater.DEFAULT_COMPRESSION)) {
+                            out.write(data);
+                        }
+                    }
+                }
+            }
+            try (ZipFile zipFile = new ZipFile(zip)) {
+                Assert.assertEquals(count, zipFile.size());
+                for (int i : new int[]{0, 65534, 65535, 65536, count - 1}) {
+                    Assert.assertEquals("entry " + i, new String(IOUtils.toByteArray(zipFile.getInputStream(zipFile.getEntry("e" + i))), "UTF-8"));
+                }
+            }
+            try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(Files.readAllBytes(zip.toPath())))) {
+                int read = 0;
+                for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                    Assert.assertEquals("entry " + read, new String(IOUtils.toByteArray(in), "UTF-8"));
+                    read++;
+                }
+                Assert.assertEquals(count, read);
+            }
+        } finally {
+            zip.delete();
+        }
+    }
+
+    @Test
+    public void testEntryTimes() throws Exception {
+        long first = 1400000000000L;
+        long second = 1500000000000L;
+        File zip = File.createTempFile("writer", ".zip");
+        try {
+            try (ZipWriter writer = new ZipWriter(new FileOutputStream(zip))) {
+                writer.setTime(first);
+                writer.writeStoredEntry("first", new byte[1]);
+                writer.setTime(second);
+                try (OutputStream out = writer.openDeflatedEntry("second", Deflater.DEFAULT_COMPRESSION)) {
+                    out.write(1);
+                }
+            }
+            try (ZipFile zipFile = new ZipFile(zip)) {
+                Assert.assertEquals(first, zipFile.getEntry("first").getTime());
+                Assert.assertEquals(second, zipFile.getEntry("second").getTime());
+            }
+        } finally {
+            zip.delete();
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testStoredEntryMismatch() throws Exception {
+        try (ZipWriter writer = new ZipWriter(new ByteArrayOutputStream());
+                OutputStream out = writer.openStoredEntry("wrong", 10, 0)) {
+            out.write(new byte[5]);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package coza.opencollab.epub.creator.util;
+
+import coza.opencollab.epub.creator.model.EpubBook;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author OpenCollab
+ */
+public class EpubEventsTest {
+
+    private EpubBook createBook(String id) {
+        EpubBook book = new EpubBook("en", id, "Events Test Book", "OpenCollab");
+        for (int i = 0; i < 20; i++) {
+            book.addTextContent("Chapter " + i, "xhtml/chapter" + i + ".xhtml", "Chapter " + i + " text").setToc(true);
+        }
+        return book;
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        EpubBook pushed = createBook("pushed");
+        EpubBook pulled = createBook("pulled");
+        EpubBook streamed = createBook("streamed");
+        EpubWriter writer = new EpubWriter();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Path file = Files.createTempFile("epub-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("coza.opencollab.epub.EpubWrite");
+            recording.enable("coza.opencollab.epub.EpubEntryWrite");
+            recording.enable("coza.opencollab.epub.OpfBuild");
+            recording.enable("coza.opencollab.epub.TocBuild");
+            recording.start();
+            writer.writeEpubToStream(pushed, new ByteArrayOutputStream());
+            final ReadableByteChannel channel = writer.openEpubChannel(pulled);
+            final ByteBuffer buffer = ByteBuffer.allocate(512);
+            channel.read(buffer);
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    buffer.clear();
+                    channel.read(buffer);
+                    return null;
+                }
+            }).get();
+            do {
+                buffer.clear();
+            } while (channel.read(buffer) != -1);
+            channel.close();
+            final EpubStreamWriter epub = writer.openEpubWriter(streamed, new ByteArrayOutputStream());
+            epub.addTextContent("Extra", "xhtml/extra.xhtml", "Extra text");
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    epub.close();
+                    return null;
+                }
+            }).get();
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            executor.shutdown();
+        }
+        List<RecordedEvent> events;
+        try {
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+        for (String bookId : new String[]{"pushed", "pulled", "streamed"}) {
+            int entries = bookId.equals("streamed") ? 21 + 4 : 20 + 4;
+            List<RecordedEvent> writes = select(events, "coza.opencollab.epub.EpubWrite", bookId);
+            Assert.assertEquals(bookId, 1, writes.size());
+            Assert.assertTrue(bookId, writes.get(0).getBoolean("success"));
+            Assert.assertTrue(bookId, writes.get(0).getLong("bytesWritten") > 0);
+            Assert.assertEquals(bookId, entries, select(events, "coza.opencollab.epub.EpubEntryWrite", bookId).size());
+            Assert.assertEquals(bookId, 1, select(events, "coza.opencollab.epub.OpfBuild", bookId).size());
+            Assert.assertEquals(bookId, 1, select(events, "coza.opencollab.epub.TocBuild", bookId).size());
+        }
+        Assert.assertEquals(3 * 24 + 1, select(events, "coza.opencollab.epub.EpubEntryWrite", null).size());
+    }
+
+    private List<RecordedEvent> select(List<RecordedEvent> events, String name, String bookId) {
+        List<RecordedEvent> selected = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)
+                    && (bookId == null || bookId.equals(event.getString("bookId")))) {
+                selected.add(event);
+            }
+        }
+        return selected;
+    }
+}